@@ -0,0 +1,75 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.internal.storage.pack.DeltaIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways of finding the normative changes between two versions of a law that differ in one article
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DiffBenchmark {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Param({"100", "2000"})
+    public int articles;
+
+    private byte[] oldText;
+    private byte[] newText;
+    private byte[] delta;
+    private MyDiffFormatter.FormatResult formatResult;
+    private DiffAlgorithm histogram;
+
+    @Setup
+    public void setUp() throws IOException {
+        oldText = law(articles, -1).getBytes(UTF8);
+        newText = law(articles, articles / 2).getBytes(UTF8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DeltaIndex(oldText).encode(out, newText);
+        delta = out.toByteArray();
+
+        histogram = DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.HISTOGRAM);
+        formatResult = new MyDiffFormatter.FormatResult();
+        formatResult.a = new LawText(oldText);
+        formatResult.b = new LawText(newText);
+        formatResult.edits = histogram.diff(RawTextComparator.WS_IGNORE_ALL, formatResult.a, formatResult.b);
+    }
+
+    private static String law(int articles, int changedArticle) {
+        StringBuilder law = new StringBuilder("# Wet\n");
+        for (int i = 0; i < articles; i++) {
+            law.append("\n## Artikel ").append(i + 1).append("\n\n");
+            law.append(i == changedArticle ? "Deze bepaling is gewijzigd." : "Deze bepaling geldt voor *iedereen*.");
+            law.append(" Zie ook [artikel ").append(i + 2).append("](#artikel-").append(i + 2).append(").\n");
+        }
+        return law.toString();
+    }
+
+    @Benchmark
+    public EditList histogramDiff() {
+        return histogram.diff(RawTextComparator.WS_IGNORE_ALL, new RawText(oldText), new RawText(newText));
+    }
+
+    @Benchmark
+    public EditList packDeltaEdits() {
+        return PackDeltaEdits.toEdits(delta, oldText, newText);
+    }
+
+    @Benchmark
+    public ModifyClassifier.Outcome normativeContentCheck() {
+        return ModifyClassifier.classify(formatResult);
+    }
+}
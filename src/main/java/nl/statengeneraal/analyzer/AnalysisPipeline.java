@@ -0,0 +1,383 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * Classifies diff entries in three stages, connected by bounded queues:
+ * </p>
+ * <ol>
+ * <li>the tree scan, done by the caller of {@link #submit(String, List)}, which collects the entries of commit
+ * pairs into batches;</li>
+ * <li>the blob prefetch, which loads the contents of the modified blobs on a pool of I/O threads, in the order they
+ * are stored in the packs. These threads spend most of their time blocked on pack reads and inflation, so there are
+ * more of them than there are cores;</li>
+ * <li>the classification, which diffs and normalises the loaded contents on one thread per core.</li>
+ * </ol>
+ * <p>
+ * Pack I/O is thus hidden behind the diffing of earlier batches. A full queue blocks the stage feeding it, so the
+ * walk never runs further ahead than the queues allow and the amount of loaded content in memory stays bounded.
+ * </p>
+ * A batch is dropped once it is classified: its changes go to the slots of their units, and a unit gets its changes
+ * when the last of its entries is classified, which are then handed to the {@link UnitAppender}, if any. A failure in a later stage is thrown by the next call to
+ * {@link #submit}, so the walk stops early. Any throwable counts as a failure, errors included: a worker records it
+ * and goes on taking batches without working on them, so a stage is never left waiting for a worker that is gone.
+ */
+public class AnalysisPipeline {
+    public static final int DEFAULT_PREFETCH_THREADS = 8;
+    /**
+     * Number of entries the stages hand to each other at a time
+     */
+    private static final int BATCH_SIZE = 64;
+    /**
+     * Marks the end of the work for one worker
+     */
+    private static final Batch POISON = new Batch();
+    /**
+     * How long the walk waits for room in the queue before it checks for a failure
+     */
+    private static final long FLUSH_WAIT_MILLIS = 100;
+
+    private final ClassifyEntriesTask.ThreadLocalFormatters formatters;
+    private final UnitAppender appender;
+    private final int prefetchThreads;
+    private final int classifyThreads;
+    private final BlockingQueue<Batch> prefetchQueue;
+    private final BlockingQueue<Batch> classifyQueue;
+    private final List<CommitUnit> units = new ArrayList<CommitUnit>();
+    private Batch pending = new Batch();
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private ExecutorService prefetchPool;
+    private ExecutorService classifyPool;
+    private final List<Future<?>> prefetchWorkers = new ArrayList<Future<?>>();
+    private final List<Future<?>> classifyWorkers = new ArrayList<Future<?>>();
+
+    /**
+     * @param appender where to store the changes of each unit once it is classified, or null to keep them in the units
+     */
+    public AnalysisPipeline(ClassifyEntriesTask.ThreadLocalFormatters formatters, UnitAppender appender,
+                            int prefetchThreads, int classifyThreads) {
+        this.formatters = formatters;
+        this.appender = appender;
+        this.prefetchThreads = prefetchThreads;
+        this.classifyThreads = classifyThreads;
+        this.prefetchQueue = new ArrayBlockingQueue<Batch>(2 * prefetchThreads);
+        this.classifyQueue = new ArrayBlockingQueue<Batch>(2 * classifyThreads);
+    }
+
+    /**
+     * Hands the entries of a commit pair to the later stages. Blocks while the queues are full.
+     * <p/>
+     * Entries of consecutive commit pairs are batched together, so the prefetch stage has enough blobs at a time to
+     * read them in pack order.
+     *
+     * @throws IllegalStateException if the later stages failed to load or classify earlier entries
+     */
+    public CommitUnit submit(String date, List<DiffEntry> entries) throws InterruptedException, IOException {
+        if (failure.get() != null) {
+            throw new IllegalStateException("Could not classify all changes", failure.get());
+        }
+        if (prefetchPool == null) {
+            start();
+        }
+        CommitUnit unit = new CommitUnit(units.size(), date, entries, 0);
+        units.add(unit);
+        Slots slots = new Slots(unit, entries.size());
+        if (entries.isEmpty()) {
+            slots.complete(appender);
+            return unit;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            pending.add(slots, i, entries.get(i));
+            if (pending.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+        return unit;
+    }
+
+    private void flush() throws InterruptedException {
+        while (!prefetchQueue.offer(pending, FLUSH_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (failure.get() != null) {
+                // The batch would not be classified anyway, and the next submit throws
+                break;
+            }
+        }
+        pending = new Batch();
+    }
+
+    /**
+     * Waits for all submitted work to be classified and stops the workers
+     *
+     * @return the submitted units in the order they were submitted, with their changes computed unless they were
+     * handed to the appender
+     */
+    public List<CommitUnit> finish() throws InterruptedException {
+        if (prefetchPool != null) {
+            if (pending.size() > 0) {
+                flush();
+            }
+            drain(prefetchQueue, prefetchWorkers);
+            drain(classifyQueue, classifyWorkers);
+            prefetchPool.shutdown();
+            classifyPool.shutdown();
+        }
+        if (failure.get() != null) {
+            throw new IllegalStateException("Could not classify all changes", failure.get());
+        }
+        return units;
+    }
+
+    private void start() {
+        prefetchPool = Executors.newFixedThreadPool(prefetchThreads, daemonThreads("prefetch"));
+        classifyPool = Executors.newFixedThreadPool(classifyThreads, daemonThreads("classify"));
+        for (int i = 0; i < prefetchThreads; i++) {
+            prefetchWorkers.add(prefetchPool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    prefetch();
+                }
+            }));
+        }
+        for (int i = 0; i < classifyThreads; i++) {
+            classifyWorkers.add(classifyPool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    classify();
+                }
+            }));
+        }
+    }
+
+    /**
+     * Stops the workers taking from the given queue, once they have done the work queued before
+     */
+    private static void drain(BlockingQueue<Batch> queue, List<Future<?>> workers) throws InterruptedException {
+        for (int i = 0; i < workers.size(); i++) {
+            queue.put(POISON);
+        }
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private void prefetch() {
+        MyDiffFormatter formatter = null;
+        PackOrder packOrder = null;
+        try {
+            formatter = formatters.get();
+            packOrder = new PackOrder(formatters.getRepository());
+        } catch (Throwable e) {
+            // The batches are still taken, or the walk would wait for room forever
+            failure.compareAndSet(null, e);
+        }
+        try {
+            Batch batch;
+            while ((batch = prefetchQueue.take()) != POISON) {
+                try {
+                    if (failure.get() == null) {
+                        batch.load(formatter, packOrder);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+                classifyQueue.put(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void classify() {
+        MyDiffFormatter formatter = null;
+        try {
+            formatter = formatters.get();
+        } catch (Throwable e) {
+            // The batches are still taken, or the prefetch threads would wait for room forever
+            failure.compareAndSet(null, e);
+        }
+        try {
+            Batch batch;
+            while ((batch = classifyQueue.take()) != POISON) {
+                try {
+                    if (failure.get() == null) {
+                        batch.classify(formatter);
+                    }
+                    // Drops the batch: its changes are with their units from here on
+                    batch.addChangesToUnits(appender);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * The changes of the entries of a unit, in the order of the entries, as the batches holding them are classified
+     */
+    private static class Slots {
+        private final CommitUnit unit;
+        private final Analyze.Change[] changes;
+        private final AtomicInteger remaining;
+
+        Slots(CommitUnit unit, int size) {
+            this.unit = unit;
+            this.changes = new Analyze.Change[size];
+            this.remaining = new AtomicInteger(size);
+        }
+
+        /**
+         * Sets the change of an entry, and hands the unit its changes once all of its entries are classified
+         */
+        void set(int position, Analyze.Change change, UnitAppender appender) throws IOException {
+            changes[position] = change;
+            // The count also makes the slots set by other classify threads visible to the last one
+            if (remaining.decrementAndGet() == 0) {
+                complete(appender);
+            }
+        }
+
+        void complete(UnitAppender appender) throws IOException {
+            List<Analyze.Change> classified = new ArrayList<Analyze.Change>();
+            for (Analyze.Change change : changes) {
+                if (change != null) {
+                    classified.add(change);
+                }
+            }
+            unit.setChanges(classified);
+            if (appender != null) {
+                appender.add(unit);
+            }
+        }
+    }
+
+    /**
+     * Entries of one or more commit pairs, with the contents of their modified blobs once loaded
+     */
+    private static class Batch {
+        private final List<Slots> units = new ArrayList<Slots>(BATCH_SIZE);
+        private final int[] positions = new int[BATCH_SIZE];
+        private final List<DiffEntry> entries = new ArrayList<DiffEntry>(BATCH_SIZE);
+        private byte[][] oldContents;
+        private byte[][] newContents;
+        private Analyze.Change[] changes;
+
+        void add(Slots unit, int position, DiffEntry entry) {
+            positions[entries.size()] = position;
+            units.add(unit);
+            entries.add(entry);
+        }
+
+        int size() {
+            return entries.size();
+        }
+
+        /**
+         * Loads the contents of the modified blobs in the order they are stored in the packs
+         */
+        void load(MyDiffFormatter formatter, PackOrder packOrder) throws IOException {
+            oldContents = new byte[entries.size()][];
+            newContents = new byte[entries.size()][];
+            List<BlobRead> reads = new ArrayList<BlobRead>(2 * entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                DiffEntry entry = entries.get(i);
+                if (entry.getChangeType() == DiffEntry.ChangeType.MODIFY) {
+                    // Texts that are still cached from an earlier comparison need no loading
+                    if (!formatter.isCached(DiffEntry.Side.OLD, entry)) {
+                        reads.add(new BlobRead(i, DiffEntry.Side.OLD, position(packOrder, entry.getOldId())));
+                    }
+                    if (!formatter.isCached(DiffEntry.Side.NEW, entry)) {
+                        reads.add(new BlobRead(i, DiffEntry.Side.NEW, position(packOrder, entry.getNewId())));
+                    }
+                }
+            }
+            Collections.sort(reads);
+            for (BlobRead read : reads) {
+                byte[] contents = formatter.load(read.side, entries.get(read.slot));
+                if (read.side == DiffEntry.Side.OLD) {
+                    oldContents[read.slot] = contents;
+                } else {
+                    newContents[read.slot] = contents;
+                }
+            }
+        }
+
+        private static long position(PackOrder packOrder, AbbreviatedObjectId id) throws IOException {
+            return id.isComplete() ? packOrder.position(id.toObjectId()) : PackOrder.NOT_PACKED;
+        }
+
+        void classify(MyDiffFormatter formatter) throws IOException {
+            changes = new Analyze.Change[entries.size()];
+            for (int i = 0; i < entries.size(); i++) {
+                changes[i] = Analyze.classifyEntry(formatter, entries.get(i), units.get(i).unit.date,
+                        oldContents[i], newContents[i]);
+            }
+        }
+
+        /**
+         * Hands the changes to their units; none after a failure, as the pipeline then ends with an exception anyway
+         */
+        void addChangesToUnits(UnitAppender appender) throws IOException {
+            if (changes == null) {
+                return;
+            }
+            for (int i = 0; i < changes.length; i++) {
+                units.get(i).set(positions[i], changes[i], appender);
+            }
+        }
+    }
+
+    /**
+     * One side of a modified entry to load, ordered by its position in the packs
+     */
+    private static class BlobRead implements Comparable<BlobRead> {
+        private final int slot;
+        private final DiffEntry.Side side;
+        private final long position;
+
+        BlobRead(int slot, DiffEntry.Side side, long position) {
+            this.slot = slot;
+            this.side = side;
+            this.position = position;
+        }
+
+        @Override
+        public int compareTo(BlobRead other) {
+            return position < other.position ? -1 : (position == other.position ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,1072 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.*;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.supercsv.cellprocessor.FmtNumber;
+import org.supercsv.cellprocessor.Optional;
+import org.supercsv.cellprocessor.constraint.NotNull;
+import org.supercsv.cellprocessor.ift.CellProcessor;
+import org.supercsv.io.CsvBeanWriter;
+import org.supercsv.io.ICsvBeanWriter;
+import org.supercsv.prefs.CsvPreference;
+import org.tautua.markdownpapers.parser.ParseException;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Class to open a git repository and count the textual changes
+ * </p>
+ * Created by Maarten on 19-6-14.
+ */
+public class Analyze {
+    public static final Pattern DATE_REGEX = Pattern.compile("[0-9][0-9][0-9][0-9]-[0-9][0-9]-[0-9][0-9]");// YYYY-MM-DD
+    /**
+     * The path of a law file, with its BWB ID in group 2. Entries are matched with {@link BwbIds} instead
+     */
+    public static final Pattern BWB_FILE_REGEX = Pattern.compile("(.*[/\\\\])*(BWB[^/^\\\\]+)([/\\\\].*)");
+
+    /**
+     * This is the tag of the first commit for which a law was added (February 13 1815). However, we do not track legislative modifications since this time, so we don't use this commit as a starting point
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    private static final String FIRST_COMMIT = "f76c2addde6c75a3514a639a5a5e522bfac3402b";
+    /**
+     * The tag of the first commit in which a law was changed. This marks the moment we have started to track legislative changes.
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    private static final String FIRST_COMMIT_WITH_EDIT = "???";
+    private static DiffAlgorithm diffAlgorithm;
+    /**
+     * Pool used to classify the entries of large commits in parallel
+     */
+    private static ForkJoinPool classifyPool;
+    private static ClassifyEntriesTask.ThreadLocalFormatters threadFormatters;
+    /**
+     * How the diff entries found during the walk are classified
+     */
+    private static Engine engine = Engine.PIPELINE;
+    /**
+     * Records the normative edits of modified laws, or null if they are not written
+     */
+    private static EditRecorder editRecorder;
+    /**
+     * Number of laws whose structure is kept for attributing edits to articles
+     */
+    private static final int ARTICLE_INDEX_CACHE_SIZE = 1024;
+    /**
+     * The structure of recently modified laws, or null if the changed articles are not written
+     */
+    private static ArticleIndex.Cache articleIndexes;
+    /**
+     * Number of modified entries that exceeded the diff budget
+     */
+    private static final AtomicInteger overBudget = new AtomicInteger();
+    /**
+     * How the tables are written, and the number of threads that compress them
+     */
+    private static Options.OutputFormat outputFormat = Options.OutputFormat.CSV;
+    private static int outputThreads = 1;
+    /**
+     * The threads that compress the tables, started with the first compressed table
+     */
+    private static ExecutorService compressors;
+
+    /**
+     * Sets up the processors for writing to the results a CSV table. There are 12 CSV columns, so 12 processors are
+     * defined. All values are converted to Strings before writing (there's no need to convert them), and null values
+     * will be written as empty columns (no need to convert them to "").
+     *
+     * @return the cell processors
+     */
+    private static CellProcessor[] getProcessors() {
+        return new CellProcessor[]{
+                new NotNull(), // date
+                new NotNull(), // BWB ID
+                new NotNull(), // type of modification
+                new Optional(), // before
+                new Optional(), // after
+                new Optional(), // is_add
+                new Optional(), // is_modify
+                new Optional(), // is_delete
+                new Optional(), // characters inserted
+                new Optional(), // characters deleted
+                new Optional(new FmtNumber(new DecimalFormat("0.0000", DecimalFormatSymbols.getInstance(Locale.ROOT)))), // similarity
+                new Optional(), // fallback
+        };
+    }
+
+    /**
+     * Sets up the processors for writing the edits to a CSV table, one for each of its 5 columns
+     *
+     * @return the cell processors
+     */
+    private static CellProcessor[] getEditProcessors() {
+        return new CellProcessor[]{
+                new NotNull(), // date
+                new NotNull(), // BWB ID
+                new NotNull(), // line
+                new NotNull(), // before
+                new NotNull(), // after
+        };
+    }
+
+    /**
+     * Start the script
+     */
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(Options.usage());
+            System.exit(2);
+            return;
+        }
+        if (options.help) {
+            System.out.print(Options.usage());
+            return;
+        }
+
+        ChangeStore changes = null;
+        try {
+            changes = analyze(options);
+
+            File previous = null;
+            if (options.delta != null && options.output.exists()) {
+                // Kept aside until the new result is compared with it
+                previous = new File(options.output.getPath() + ".previous");
+                Files.move(options.output.toPath(), previous.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            boolean written = false;
+            try {
+                //Write results to table
+                writeResultsToTable(changes, options.output);
+                if (options.delta != null) {
+                    writeDelta(previous, options.output, options.delta);
+                }
+                written = true;
+            } finally {
+                if (previous != null) {
+                    keepOrRestore(previous, options.output, written);
+                }
+            }
+            if (options.edits != null) {
+                writeEditsToTable(changes, options.edits);
+            }
+            if (options.articles != null) {
+                writeArticlesToTable(changes, options.articles);
+            }
+            if (options.rollups != null) {
+                writeRollupsToTables(changes, options.rollups);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (changes != null) {
+                try {
+                    changes.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (compressors != null) {
+                compressors.shutdownNow();
+            }
+        }
+    }
+
+    private static void writeDelta(File previous, File output, File delta) throws IOException {
+        int rows;
+        try {
+            rows = ResultDelta.write(previous, output, delta);
+        } catch (ResultDelta.NotOrderedException e) {
+            if (previous == null || !previous.equals(e.getFile())) {
+                throw e;
+            }
+            // Results of runs before they were ordered cannot be merged
+            System.err.println("WARNING: " + e.getMessage() + ", so all rows of the result are inserted");
+            rows = ResultDelta.write(null, output, delta);
+        }
+        System.out.println(rows + " rows inserted or removed since the previous result");
+    }
+
+    /**
+     * Deletes the previous result once the new one is written, or puts it back if writing failed
+     */
+    private static void keepOrRestore(File previous, File output, boolean written) {
+        try {
+            if (written) {
+                Files.delete(previous.toPath());
+            } else {
+                Files.move(previous.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("WARNING: could not " + (written ? "delete " : "restore ") + previous + ": " + e);
+        }
+    }
+
+    /**
+     * Walks the history of the law repository and collects the changes
+     *
+     * @return the changes ordered by date, then BWB ID, to be closed by the caller
+     */
+    public static ChangeStore analyze(Options options) throws Exception {
+        options.installCacheConfig();
+
+        // Create git repo object
+        FileRepositoryBuilder builder = new FileRepositoryBuilder();
+        Repository repository = builder.setGitDir(options.repository) //Path to markdown git repository
+                .readEnvironment() // scan environment GIT_* variables
+                .findGitDir() // scan up the file system tree
+                .build();
+
+        // Set algorithm used for determining when two texts are different
+        diffAlgorithm = DiffAlgorithm.getAlgorithm(options.algorithm != null ? options.algorithm :
+                repository.getConfig().getEnum(
+                        ConfigConstants.CONFIG_DIFF_SECTION,
+                        null,
+                        ConfigConstants.CONFIG_KEY_ALGORITHM,
+                        DiffAlgorithm.SupportedAlgorithm.HISTOGRAM)
+        );
+        engine = options.engine;
+        outputFormat = options.format;
+        outputThreads = options.threads;
+        classifyPool = new ForkJoinPool(options.threads);
+        editRecorder = null;
+        if (options.edits != null) {
+            editRecorder = new EditRecorder(options.excerptLength,
+                    options.editTexts != null ? new EditTexts(options.editTexts) : null);
+        }
+        articleIndexes = options.articles != null ? new ArticleIndex.Cache(ARTICLE_INDEX_CACHE_SIZE) : null;
+        overBudget.set(0);
+
+        //Do a walk along the commit graph, starting at a certain commit
+        // Its reader keeps the bodies of the commits it just parsed, which the date is taken from
+        RevWalk walk = new RevWalk(new CommitBodyReader(repository.newObjectReader(), CommitBodyReader.DEFAULT_CAPACITY));
+        // The walk keeps every commit it passes; without their bodies they only hold their parents, tree and commit
+        // time
+        walk.setRetainBody(false);
+        ObjectReader walkReader = walk.getObjectReader();
+        RevCommit newCommit = getCommit(walk, repository, options.start);
+        if (options.stop != null) {
+            // Walk until the stop commit, which is still diffed against but not itself counted
+            walk.markUninteresting(getCommit(walk, repository, options.stop));
+        }
+
+        walk.markStart(newCommit); // Start at last commit (at time of writing), and work into the past
+        RevCommit oldCommit = walk.next();
+        if (options.stop != null && oldCommit == null) {
+            oldCommit = newCommit.getParentCount() > 0 ? walk.parseCommit(newCommit.getParent(0)) : null;
+        }
+
+        ChangeStore changes = new ChangeStore();
+        // The other engines store the changes of each commit pair as soon as it is classified
+        UnitAppender appender = new UnitAppender(changes);
+        threadFormatters = new ClassifyEntriesTask.ThreadLocalFormatters(repository, options);
+        // Set up like the formatters of the worker threads, as it classifies the small commits of the sequential engine
+        MyDiffFormatter formatter = threadFormatters.get();
+        CommitScheduler scheduler = new CommitScheduler(repository, classifyPool, threadFormatters, appender);
+        AnalysisPipeline pipeline = new AnalysisPipeline(threadFormatters, appender, options.prefetchThreads, options.threads);
+        LawHistory history = new LawHistory(classifyPool, threadFormatters, appender);
+        int day = CommitDates.dayOf(newCommit, walkReader, options.dateSource, options.timeZone);
+        // Number of commits the walk returned
+        int walked = oldCommit != null ? 1 : 0;
+        while (newCommit != null) {
+            // The start commit is counted even if its message is not a date
+            String authorDate = day != CommitDates.NONE ? CommitDates.format(day) : CommitDates.getMessage(newCommit, walkReader);
+            System.out.println("New commit date: " + authorDate);
+//                String oldDate = "none";
+//                if (oldCommit != null) {
+//                    oldDate = oldCommit.getFullMessage().trim();
+//                }
+//                System.out.println("Old commit date: " + oldDate);
+            if (options.includes(day)) {
+                // List differences for new commit
+                AbstractTreeIterator newTreeParser = prepareTreeParser(walkReader, newCommit);
+                AbstractTreeIterator oldTreeParser;
+                if (oldCommit != null) {
+                    oldTreeParser = prepareTreeParser(walkReader, oldCommit);
+                } else {
+                    oldTreeParser = new EmptyTreeIterator();
+                }
+
+                // return a list of diff entries
+                List<DiffEntry> diffs = formatter.scan(oldTreeParser, newTreeParser);
+                switch (engine) {
+                    case PIPELINE:
+                        // Blocks when the later stages fall behind
+                        pipeline.submit(authorDate, diffs);
+                        break;
+                    case SCHEDULED:
+                        // Only collect the work here, it is classified once all commits are known
+                        scheduler.add(authorDate, diffs);
+                        break;
+                    case LAWS:
+                        // Only add the versions to the chains of the laws, which are compared once the walk is done
+                        history.add(authorDate, diffs);
+                        break;
+                    default:
+                        addEvents(formatter, diffs, authorDate, changes, repository);
+                        break;
+                }
+            }
+
+            //Prepare for next iteration
+            do {
+                newCommit = oldCommit;
+                oldCommit = walk.next();
+                if (oldCommit != null) {
+                    walked++;
+                }
+                day = newCommit != null ? CommitDates.dayOf(newCommit, walkReader, options.dateSource, options.timeZone) : CommitDates.NONE;
+            }
+            //Skip commits that are not formatted YYYY-MM-DD
+            while (newCommit != null && day == CommitDates.NONE);
+            if (options.stop != null && newCommit != null && oldCommit == null && newCommit.getParentCount() > 0) {
+                // The walk does not return the stop commit, but the last counted commit is diffed against it
+                oldCommit = walk.parseCommit(newCommit.getParent(0));
+            }
+        }
+        System.out.println("Walked " + walked + " commits");
+        // Drops the commits, so the engines that classify after the walk do not keep them
+        walk.dispose();
+        walk.release();
+        if (engine == Engine.PIPELINE) {
+            pipeline.finish();
+        } else if (engine == Engine.SCHEDULED) {
+            scheduler.run();
+        } else if (engine == Engine.LAWS) {
+            System.out.println("Comparing the versions of " + history.getLawCount() + " laws");
+            history.run();
+        }
+        scheduler.release();
+        threadFormatters.release();
+        classifyPool.shutdown();
+        if (editRecorder != null) {
+            editRecorder.close();
+        }
+        if (overBudget.get() > 0) {
+            System.err.println(overBudget.get() + " modified laws were compared by their lines instead of diffed, see the Fallback column");
+        }
+        repository.close();
+        try {
+            return changes.sort();
+        } finally {
+            changes.close();
+        }
+    }
+
+    private static void addEvents(MyDiffFormatter formatter, List<DiffEntry> diff, String date, ChangeStore changes, Repository repository) throws IOException, GitAPIException, ParseException {
+        // Handle diffs
+        if (diff.size() >= ClassifyEntriesTask.PARALLEL_THRESHOLD) {
+            // Large commits (e.g. the initial import) are split over the fork-join pool, each worker with its own formatter
+            changes.appendAll(classifyPool.invoke(new ClassifyEntriesTask(threadFormatters, diff, 0, diff.size(), date)));
+            return;
+        }
+        for (DiffEntry entry : diff) {
+            Change change = classifyEntry(formatter, entry, date);
+            if (change != null) {
+                changes.append(change);
+            }
+        }
+    }
+
+    /**
+     * Determines the change a single diff entry represents
+     *
+     * @return the change, or null if the entry is not a (normative) change to a BWB file
+     */
+    static Change classifyEntry(MyDiffFormatter formatter, DiffEntry entry, String date) throws IOException {
+        return classifyEntry(formatter, entry, date, null, null);
+    }
+
+    /**
+     * Determines the change a single diff entry represents, using contents that may have been loaded in advance
+     *
+     * @param aRaw the old contents as loaded by {@link MyDiffFormatter#load}, or null to load them now
+     * @param bRaw the new contents as loaded by {@link MyDiffFormatter#load}, or null to load them now
+     * @return the change, or null if the entry is not a (normative) change to a BWB file
+     */
+    static Change classifyEntry(MyDiffFormatter formatter, DiffEntry entry, String date, byte[] aRaw, byte[] bRaw) throws IOException {
+        String path = entry.getNewPath();
+        if (path == null || path.equals("/dev/null")) {
+            path = entry.getOldPath();
+        }
+
+        String bwbId = BwbIds.find(path);
+        if (bwbId != null) {
+
+            String before = null;
+            String after = null;
+            switch (entry.getChangeType()) {
+                case MODIFY:
+                    MyDiffFormatter.FormatResult comparison = formatter.compare(entry, aRaw, bRaw);
+                    if (comparison.exceeded != null) {
+                        overBudget.incrementAndGet();
+                        System.err.println("WARNING: " + path + " exceeded the diff " + comparison.exceeded.name().toLowerCase(Locale.ROOT)
+                                + " budget, compared by its lines; " + date);
+                    }
+                    // The classifier renders the edits for the recorder and the articles, once
+                    List<ModifyClassifier.RenderedEdit> normativeEdits = editRecorder != null || articleIndexes != null
+                            ? new ArrayList<ModifyClassifier.RenderedEdit>(2) : null;
+                    switch (ModifyClassifier.classify(comparison, normativeEdits)) {
+                        case NORMATIVE:
+                            Change change = new Change(date, bwbId, "modify", before, after);
+                            change.setMagnitude(ChangeMagnitude.of(comparison));
+                            if (comparison.exceeded != null) {
+                                change.fallback = comparison.exceeded.name().toLowerCase(Locale.ROOT);
+                            }
+                            if (editRecorder != null) {
+                                change.edits = editRecorder.record(date, bwbId, normativeEdits);
+                            }
+                            if (articleIndexes != null) {
+                                change.articles = getChangedArticles(date, bwbId, entry, comparison, normativeEdits);
+                            }
+                            return change;
+                        case NOT_TEXT:
+                            // The blob did change, we just cannot tell whether the change is normative
+                            System.err.println("WARNING: " + path + " is " + (comparison.tooLarge ? "too large to compare" : "binary")
+                                    + ", counted as modified; " + date);
+                            return new Change(date, bwbId, "modify", before, after);
+                        case NOT_NORMATIVE:
+                            break;
+                    }
+                    break;
+                case ADD:
+                    //NOTE: Of course, the entire text content is added, but that will make out output way too wordy
+                    return new Change(date, bwbId, "add", before, after);
+                case DELETE:
+                    //NOTE: Of course, the entire text content is deleted, but that will make out output way too wordy
+                    return new Change(date, bwbId, "delete", before, after);
+                case RENAME:
+                    System.err.println("WARNING: Renames should not occur (happened from " + entry.getOldPath() + " to " + entry.getNewPath());
+                    break;
+                case COPY:
+                    System.err.println("WARNING: Copies should not occur (happened from " + entry.getOldPath() + " to " + entry.getNewPath());
+                    break;
+            }
+            //System.out.println("Entry: " + entry + ", from: " + entry.getOldId() + ", to: " + entry.getNewId() + ". Type: " + entry.getChangeType());
+        } else {
+            //TODO why do changes to index.json appear? They do not appear in YYYY-MM-DD commits :-/
+            System.err.println("Could not find BWB ID in " + path + "; " + date);
+        }
+        return null;
+    }
+
+
+    /**
+     * Attributes the normative edits of a modified law to the articles (or other headings) they fall under. Laws that
+     * were not diffed have no edits to attribute
+     *
+     * @param normativeEdits the normative edits, as collected by the classifier
+     */
+    private static List<ArticleChange> getChangedArticles(String date, String bwbId, DiffEntry entry, MyDiffFormatter.FormatResult comparison,
+                                                          List<ModifyClassifier.RenderedEdit> normativeEdits) {
+        if (normativeEdits.isEmpty()) {
+            // Not diffed, see DiffBudget
+            return Collections.emptyList();
+        }
+        ArticleIndex before = articleIndexes.get(entry.getOldId().toObjectId(), comparison.a);
+        ArticleIndex after = articleIndexes.get(entry.getNewId().toObjectId(), comparison.b);
+        Set<String> headings = new LinkedHashSet<String>();
+        for (ModifyClassifier.RenderedEdit normative : normativeEdits) {
+            Edit edit = normative.edit;
+            if (edit.getEndB() > edit.getBeginB()) {
+                after.addHeadings(edit.getBeginB(), edit.getEndB(), headings);
+            } else {
+                // Deleted lines only exist in the old version
+                before.addHeadings(edit.getBeginA(), edit.getEndA(), headings);
+            }
+        }
+        List<ArticleChange> articles = new ArrayList<ArticleChange>(headings.size());
+        for (String heading : headings) {
+            articles.add(new ArticleChange(date, bwbId, heading));
+        }
+        return articles;
+    }
+
+    /**
+     * Count text add / modifications / deletions for this particular date
+     */
+    @Deprecated
+    @SuppressWarnings("fallthrough")
+    private static void countEventsInDiff(Repository repository, AbstractTreeIterator
+            oldTreeParser, AbstractTreeIterator newTreeParser, ChangesCounter changesCounter) throws
+            IOException, GitAPIException, ParseException {
+        // return a list of diff entries
+        List<DiffEntry> diff = new Git(repository).diff().
+                setOldTree(oldTreeParser).
+                setNewTree(newTreeParser).
+                call();
+        for (DiffEntry entry : diff) {
+//                    entry.getOldPath().endsWith("README.md")
+            switch (entry.getChangeType()) {
+                case MODIFY:
+                    changesCounter.addIfNormativeContentModification(repository, entry);
+                case ADD:
+                case DELETE:
+                    changesCounter.add(entry.getChangeType());
+                    break;
+                case RENAME:
+                    System.err.println("WARNING: Renames should not occur (happened from " + entry.getOldPath() + " to " + entry.getNewPath());
+                    break;
+                case COPY:
+                    System.err.println("WARNING: Copies should not occur (happened from " + entry.getOldPath() + " to " + entry.getNewPath());
+                    break;
+            }
+            //System.out.println("Entry: " + entry + ", from: " + entry.getOldId() + ", to: " + entry.getNewId() + ". Type: " + entry.getChangeType());
+        }
+    }
+
+
+    /**
+     * Opens a table for writing in the output format
+     */
+    private static Writer openTable(File output) throws IOException {
+        if (outputFormat == Options.OutputFormat.CSV_GZIP) {
+            if (compressors == null) {
+                compressors = ChunkedGzipWriter.newCompressors(outputThreads);
+            }
+            // All tables share the threads, and do not each start their own
+            return new ChunkedGzipWriter(output, compressors, outputThreads);
+        }
+        // The texts are Dutch, so do not depend on the platform encoding
+        return new OutputStreamWriter(new FileOutputStream(output), "UTF-8");
+    }
+
+    private static void writeResultsToTable(ChangeStore changes, File output) throws IOException {
+        ICsvBeanWriter beanWriter = null;
+        try {
+            beanWriter = new CsvBeanWriter(openTable(output), CsvPreference.STANDARD_PREFERENCE);
+            final String[] header = new String[]{"Date", "BWB ID", "Modification type", "Before", "After", "Adds", "Modifies", "Deletes",
+                    "Characters inserted", "Characters deleted", "Similarity", "Fallback"};
+            final CellProcessor[] processors = getProcessors();
+
+            beanWriter.writeHeader(header);
+            for (Change change : changes) {
+                beanWriter.write(change, Change.TABLE_MAPPING, processors);
+            }
+        } finally {
+            if (beanWriter != null) {
+                beanWriter.close();
+            }
+        }
+    }
+
+    private static void writeEditsToTable(ChangeStore changes, File output) throws IOException {
+        ICsvBeanWriter beanWriter = null;
+        try {
+            beanWriter = new CsvBeanWriter(openTable(output), CsvPreference.STANDARD_PREFERENCE);
+            final String[] header = new String[]{"Date", "BWB ID", "Line", "Before", "After"};
+            final CellProcessor[] processors = getEditProcessors();
+
+            beanWriter.writeHeader(header);
+            for (Change change : changes) {
+                if (change.edits != null) {
+                    for (EditChange edit : change.edits) {
+                        beanWriter.write(edit, EditChange.TABLE_MAPPING, processors);
+                    }
+                }
+            }
+        } finally {
+            if (beanWriter != null) {
+                beanWriter.close();
+            }
+        }
+    }
+
+    private static void writeArticlesToTable(ChangeStore changes, File output) throws IOException {
+        ICsvBeanWriter beanWriter = null;
+        try {
+            beanWriter = new CsvBeanWriter(openTable(output), CsvPreference.STANDARD_PREFERENCE);
+            final String[] header = new String[]{"Date", "BWB ID", "Article"};
+            final CellProcessor[] processors = new CellProcessor[]{new NotNull(), new NotNull(), new NotNull()};
+
+            beanWriter.writeHeader(header);
+            for (Change change : changes) {
+                if (change.articles != null) {
+                    for (ArticleChange article : change.articles) {
+                        beanWriter.write(article, ArticleChange.TABLE_MAPPING, processors);
+                    }
+                }
+            }
+        } finally {
+            if (beanWriter != null) {
+                beanWriter.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the tables of {@link Rollups} to the directory: daily, weekly, monthly, yearly and rolling
+     */
+    private static void writeRollupsToTables(ChangeStore changes, File directory) throws IOException {
+        Rollups rollups = new Rollups();
+        int undated = 0;
+        for (Change change : changes) {
+            if (!rollups.add(change.date, change.bwbId, change.type)) {
+                undated++;
+            }
+        }
+        if (undated > 0) {
+            System.err.println("Left " + undated + " changes of commits without a date out of the rollups");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        String extension = outputFormat == Options.OutputFormat.CSV_GZIP ? ".csv.gz" : ".csv";
+        String[] names = {"daily", "weekly", "monthly", "yearly", "rolling-" + Rollups.ROLLING_WINDOW + "-days"};
+        List<Writer> writers = new ArrayList<Writer>(names.length);
+        boolean opened = false;
+        try {
+            for (String name : names) {
+                writers.add(openTable(new File(directory, name + extension)));
+            }
+            opened = true;
+        } finally {
+            if (!opened) {
+                // Rollups.write closes them once they are all open
+                for (Writer writer : writers) {
+                    try {
+                        writer.close();
+                    } catch (IOException e) {
+                        System.err.println("WARNING: could not close a rollup table: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        rollups.write(writers.get(0), writers.get(1), writers.get(2), writers.get(3), writers.get(4));
+    }
+
+    private static void writeChangesCountToTable(Map<String, ChangesCounter> changesCounterForDates) throws IOException {
+        ICsvBeanWriter beanWriter = null;
+        try {
+            beanWriter = new CsvBeanWriter(new FileWriter("result.csv"),
+                    CsvPreference.STANDARD_PREFERENCE);
+            final String[] header = new String[]{"Date", "Documents added", "Documents modified", "Documents deleted"};
+            final CellProcessor[] processors = getProcessors();
+
+            beanWriter.writeHeader(header);
+            for (ChangesCounter date : changesCounterForDates.values()) {
+                beanWriter.write(date, ChangesCounter.TABLE_MAPPING, processors);
+            }
+        } finally {
+            if (beanWriter != null) {
+                beanWriter.close();
+            }
+        }
+    }
+
+
+    private static RevCommit getCommit(RevWalk walk, Repository repository, String revision) throws IOException {
+        ObjectId objectId = repository.resolve(revision);
+        if (objectId == null) {
+            throw new IllegalArgumentException("Unknown commit: " + revision);
+        }
+        // from the commit we can build the tree which allows us to construct the TreeParser
+        return walk.parseCommit(objectId);
+    }
+
+    /**
+     * Reads the root tree of the commit. The tree is not parsed through the walk, which would keep it until the walk is
+     * done; the parser only holds it until the entries of the commit pair are scanned
+     */
+    private static AbstractTreeIterator prepareTreeParser(ObjectReader reader, RevCommit commit) throws IOException {
+        CanonicalTreeParser treeParser = new CanonicalTreeParser();
+        treeParser.reset(reader, commit.getTree());
+        return treeParser;
+    }
+
+    public static Map.Entry<String, String> getBeforeAndAfter(MyDiffFormatter.FormatResult formatResult, Edit edit) {
+        String a = ModifyClassifier.getString(formatResult.a, edit.getBeginA(), edit.getEndA());
+        String b = ModifyClassifier.getString(formatResult.b, edit.getBeginB(), edit.getEndB());
+        return new AbstractMap.SimpleImmutableEntry<String, String>(a, b);
+    }
+
+    public static boolean hasNormativeContentChange(MyDiffFormatter.FormatResult formatResult, Edit edit) {
+        // Normalise the texts (e.g., strip spaces and anchors) to see if the actual content changed
+        return ModifyClassifier.isNormative(formatResult.a, formatResult.b, edit);
+    }
+
+    @Deprecated
+    private static ChangesCounter getChangesCounter(Map<String, ChangesCounter> changesCounterForDate, String date) {
+        ChangesCounter changesCounter = changesCounterForDate.get(date);
+        if (changesCounter == null) {
+            changesCounter = new ChangesCounter(date);
+            changesCounterForDate.put(date, changesCounter);
+        }
+        return changesCounter;
+    }
+
+    /**
+     * Ways to classify the diff entries of the walk
+     */
+    public enum Engine {
+        /**
+         * Classify each commit pair during the walk, splitting only large commits over the fork-join pool
+         */
+        SEQUENTIAL,
+        /**
+         * Collect all commit pairs first, then classify them on the fork-join pool, most expensive first
+         */
+        SCHEDULED,
+        /**
+         * Classify during the walk in stages: blobs are prefetched on I/O threads while earlier ones are diffed
+         */
+        PIPELINE,
+        /**
+         * Collect the versions of each law during the walk, then compare every version to the previous version of the
+         * same law, the laws in parallel
+         */
+        LAWS
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public static class Change {
+        public static final String[] TABLE_MAPPING = new String[]{"date", "bwbId", "type", "before", "after", "isAdd", "isModify", "isDelete",
+                "charactersInserted", "charactersDeleted", "similarity", "fallback"};
+        public String date;
+        public String bwbId;
+        public String type;
+        public String before;
+        public String after;
+        public int isAdd = 0;
+        public int isModify = 0;
+        public int isDelete = 0;
+        /**
+         * The magnitude of a modification of a text, null otherwise
+         */
+        public Integer charactersInserted;
+        public Integer charactersDeleted;
+        public Double similarity;
+        /**
+         * The budget a modification exceeded (size or time), so that it was compared by its lines instead of diffed
+         */
+        public String fallback;
+        /**
+         * The normative edits of a modification, if they are recorded
+         */
+        public List<EditChange> edits;
+        /**
+         * The articles changed by a modification, if they are recorded
+         */
+        public List<ArticleChange> articles;
+
+        public Change(String date, String bwbId, String type, String before, String after) {
+            this.date = date;
+            this.bwbId = bwbId;
+            this.type = type;
+            this.before = before;
+            this.after = after;
+            if (type.equals("add")) {
+                this.isAdd = 1;
+            } else if (type.equals("modify")) {
+                this.isModify = 1;
+            } else if (type.equals("delete")) {
+                this.isDelete = 1;
+            } else {
+                throw new IllegalArgumentException();
+            }
+        }
+
+        public int getIsAdd() {
+            return isAdd;
+        }
+
+        public int getIsDelete() {
+            return isDelete;
+        }
+
+        public int getIsModify() {
+            return isModify;
+        }
+
+        public void setIsAdd(int isAdd) {
+            this.isAdd = isAdd;
+        }
+
+        public void setIsDelete(int isDelete) {
+            this.isDelete = isDelete;
+        }
+
+        public void setIsModify(int isModify) {
+            this.isModify = isModify;
+        }
+
+        public String getDate() {
+            return date;
+        }
+
+        public void setDate(String date) {
+            this.date = date;
+        }
+
+        public String getBwbId() {
+            return bwbId;
+        }
+
+        public void setBwbId(String bwbId) {
+            this.bwbId = bwbId;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public String getBefore() {
+            return before;
+        }
+
+        public void setBefore(String before) {
+            this.before = before;
+        }
+
+        public String getAfter() {
+            return after;
+        }
+
+        public void setAfter(String after) {
+            this.after = after;
+        }
+
+        public Integer getCharactersInserted() {
+            return charactersInserted;
+        }
+
+        public Integer getCharactersDeleted() {
+            return charactersDeleted;
+        }
+
+        public Double getSimilarity() {
+            return similarity;
+        }
+
+        public String getFallback() {
+            return fallback;
+        }
+
+        public void setMagnitude(ChangeMagnitude magnitude) {
+            this.charactersInserted = magnitude.inserted;
+            this.charactersDeleted = magnitude.deleted;
+            this.similarity = magnitude.similarity;
+        }
+
+        /**
+         * @return the same change of the same law on another date, with its edits and articles
+         */
+        public Change withDate(String date) {
+            Change change = new Change(date, bwbId, type, before, after);
+            change.charactersInserted = charactersInserted;
+            change.charactersDeleted = charactersDeleted;
+            change.similarity = similarity;
+            change.fallback = fallback;
+            if (edits != null) {
+                change.edits = new ArrayList<EditChange>(edits.size());
+                for (EditChange edit : edits) {
+                    change.edits.add(new EditChange(date, bwbId, edit.line, edit.before, edit.after));
+                }
+            }
+            if (articles != null) {
+                change.articles = new ArrayList<ArticleChange>(articles.size());
+                for (ArticleChange article : articles) {
+                    change.articles.add(new ArticleChange(date, bwbId, article.article));
+                }
+            }
+            return change;
+        }
+
+    }
+
+    /**
+     * A normative edit within a modified law, with excerpts of the text before and after it (or their ids in the side
+     * file of the full texts)
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public static class EditChange {
+        public static final String[] TABLE_MAPPING = new String[]{"date", "bwbId", "line", "before", "after"};
+        public final String date;
+        public final String bwbId;
+        /**
+         * The first line of the edit in the new text, counting from 1
+         */
+        public final int line;
+        public final String before;
+        public final String after;
+
+        public EditChange(String date, String bwbId, int line, String before, String after) {
+            this.date = date;
+            this.bwbId = bwbId;
+            this.line = line;
+            this.before = before;
+            this.after = after;
+        }
+
+        public String getDate() {
+            return date;
+        }
+
+        public String getBwbId() {
+            return bwbId;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getBefore() {
+            return before;
+        }
+
+        public String getAfter() {
+            return after;
+        }
+    }
+
+    /**
+     * An article (or other heading) of a law that changed normatively. The article is empty for the lines before the
+     * first heading
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public static class ArticleChange {
+        public static final String[] TABLE_MAPPING = new String[]{"date", "bwbId", "article"};
+        public final String date;
+        public final String bwbId;
+        public final String article;
+
+        public ArticleChange(String date, String bwbId, String article) {
+            this.date = date;
+            this.bwbId = bwbId;
+            this.article = article;
+        }
+
+        public String getDate() {
+            return date;
+        }
+
+        public String getBwbId() {
+            return bwbId;
+        }
+
+        public String getArticle() {
+            return article;
+        }
+    }
+
+    /**
+     * Counts the number of adds, modifies and deletes for a certain date
+     */
+    @Deprecated
+    private static class ChangesCounter {
+        public static final String[] TABLE_MAPPING = new String[]{"date", "adds", "modifies", "deletes"};
+        public final String date;
+        public int adds = 0;
+        public int modifies = 0;
+        public int deletes = 0;
+
+        public ChangesCounter(String date) {
+            this.date = date;
+        }
+
+        public String getDate() {
+            return date;
+        }
+
+        public int getAdds() {
+            return adds;
+        }
+
+        public void setAdds(int adds) {
+            this.adds = adds;
+        }
+
+        public int getModifies() {
+            return modifies;
+        }
+
+        public void setModifies(int modifies) {
+            this.modifies = modifies;
+        }
+
+        public int getDeletes() {
+            return deletes;
+        }
+
+        public void setDeletes(int deletes) {
+            this.deletes = deletes;
+        }
+
+        public void add(DiffEntry.ChangeType type) {
+            switch (type) {
+                case ADD:
+                    adds++;
+                    break;
+                case MODIFY:
+                    modifies++;
+                    break;
+                case DELETE:
+                    deletes++;
+                    break;
+                case RENAME:
+                case COPY:
+                    throw new IllegalArgumentException();
+            }
+        }
+
+
+        /**
+         * Adds one to <i>adds</i> if this diff contains modifications that are not whitespace or markup
+         */
+        public void addIfNormativeContentModification(Repository repository, DiffEntry diffEntry) throws IOException, ParseException {
+            if (diffEntry.getChangeType() != DiffEntry.ChangeType.MODIFY) {
+                throw new IllegalArgumentException();
+            }
+
+            MyDiffFormatter formatter = new MyDiffFormatter(System.out);
+            formatter.setRepository(repository);
+
+            MyDiffFormatter.FormatResult formatResult = formatter.getFormatResult(diffEntry);//TODO find another way to get raw text, this isn't efficient (?)
+            EditList edits = diffAlgorithm.diff(RawTextComparator.WS_IGNORE_ALL, formatResult.a, formatResult.b);
+
+            for (Edit edit : edits) {
+                if (hasNormativeContentChange(formatResult, edit)) {
+                    adds++;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.IntList;
+import org.eclipse.jgit.util.RawParseUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * The structure of a law: the lines on which its headings (such as "## Artikel 1" or "# Hoofdstuk 2") start. Built by
+ * scanning the Markdown once, after which the heading a line belongs to is found with a binary search.
+ * </p>
+ * Lines are counted like {@link org.eclipse.jgit.diff.RawText} does, so the line ranges of edits can be looked up
+ * directly.
+ */
+public class ArticleIndex {
+    /**
+     * What the lines before the first heading are attributed to
+     */
+    public static final String PREAMBLE = "";
+
+    private final int[] headingLines;
+    private final String[] headings;
+
+    private ArticleIndex(int[] headingLines, String[] headings) {
+        this.headingLines = headingLines;
+        this.headings = headings;
+    }
+
+    /**
+     * Scans the Markdown for heading lines
+     */
+    public static ArticleIndex build(LawText text) {
+        byte[] content = text.getContent();
+        IntList lines = new IntList();
+        List<String> headings = new ArrayList<String>();
+        for (int line = 0; line < text.size(); line++) {
+            int start = text.getLineStart(line);
+            if (content[start] == '#') {
+                int end = text.getLineStart(line + 1);
+                int textStart = start;
+                while (textStart < end && content[textStart] == '#') {
+                    textStart++;
+                }
+                lines.add(line);
+                headings.add(stripClosingHashes(RawParseUtils.decode(content, textStart, end).trim()));
+            }
+        }
+        int[] headingLines = new int[lines.size()];
+        for (int i = 0; i < headingLines.length; i++) {
+            headingLines[i] = lines.get(i);
+        }
+        return new ArticleIndex(headingLines, headings.toArray(new String[headings.size()]));
+    }
+
+    /**
+     * Removes the optional closing sequence of an ATX heading, such as the "##" of "## Artikel 1 ##". Like in Markdown,
+     * hashes that are not preceded by a space are part of the heading.
+     */
+    static String stripClosingHashes(String heading) {
+        int end = heading.length();
+        while (end > 0 && heading.charAt(end - 1) == '#') {
+            end--;
+        }
+        if (end == heading.length() || (end > 0 && !Character.isWhitespace(heading.charAt(end - 1)))) {
+            return heading;
+        }
+        return heading.substring(0, end).trim();
+    }
+
+    /**
+     * @return the heading the line falls under, or {@link #PREAMBLE} for a line before the first heading
+     */
+    public String headingOf(int line) {
+        int index = indexOf(line);
+        return index < 0 ? PREAMBLE : headings[index];
+    }
+
+    /**
+     * Adds the headings of the lines from begin (inclusive) to end (exclusive) to the collection. An empty range, as on
+     * the old side of an insertion, counts as the line it is inserted before.
+     */
+    public void addHeadings(int begin, int end, Collection<String> into) {
+        int first = indexOf(begin);
+        int last = indexOf(Math.max(begin, end - 1));
+        if (first < 0) {
+            // Before the first heading
+            into.add(PREAMBLE);
+            first = 0;
+        }
+        for (int index = first; index <= last; index++) {
+            into.add(headings[index]);
+        }
+    }
+
+    private int indexOf(int line) {
+        int low = 0;
+        int high = headingLines.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (headingLines[middle] <= line) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * The indexes of the most recently seen blobs. The new version of a law in one commit is usually the old version
+     * the next time it changes, so its index is only built once.
+     */
+    public static class Cache {
+        private final Map<ObjectId, ArticleIndex> indexes;
+
+        public Cache(final int size) {
+            indexes = new LinkedHashMap<ObjectId, ArticleIndex>(2 * size, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ObjectId, ArticleIndex> eldest) {
+                    return size() > size;
+                }
+            };
+        }
+
+        /**
+         * @param id   the blob id of the text
+         * @param text the contents of the blob
+         */
+        public ArticleIndex get(AnyObjectId id, LawText text) {
+            ArticleIndex index;
+            synchronized (indexes) {
+                index = indexes.get(id);
+            }
+            if (index == null) {
+                // Built outside the lock; two threads may build the same index, which is harmless
+                index = build(text);
+                synchronized (indexes) {
+                    indexes.put(id.copy(), index);
+                }
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package nl.statengeneraal.analyzer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Finds the BWB ID in the path of a law file, such as BWBR0001840 in <code>BWBR0001840/README.md</code>: the last
+ * directory in the path whose name starts with BWB. This is what {@link Analyze#BWB_FILE_REGEX} matches, found by a
+ * single backwards scan over the path instead, as every entry of every commit passes through here.
+ * </p>
+ * The IDs are interned without creating a string for the ones seen before, so all changes of a law share one string.
+ * Each thread looks the IDs up in a table of its own; only an ID new to the thread goes to the shared map.
+ */
+public final class BwbIds {
+    private static final String PREFIX = "BWB";
+
+    /**
+     * The IDs seen by any thread, so that all threads share one string per law
+     */
+    private static final ConcurrentMap<String, String> shared = new ConcurrentHashMap<String, String>();
+    /**
+     * The IDs each thread has seen, looked up without a lock or creating a string
+     */
+    private static final ThreadLocal<Table> tables = new ThreadLocal<Table>() {
+        @Override
+        protected Table initialValue() {
+            return new Table();
+        }
+    };
+
+    private BwbIds() {
+    }
+
+    /**
+     * @return the BWB ID of the path, or null if the path is not in a BWB directory
+     */
+    public static String find(String path) {
+        // The end of the directory name after the one being scanned; the file name itself is not a directory
+        int end = -1;
+        for (int i = path.length() - 1; i >= -1; i--) {
+            if (i < 0 || isSeparator(path.charAt(i))) {
+                if (end >= 0 && isBwbId(path, i + 1, end)) {
+                    return intern(path, i + 1, end);
+                }
+                end = i;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == '\\';
+    }
+
+    private static boolean isBwbId(String path, int start, int end) {
+        if (end - start <= PREFIX.length() || !path.startsWith(PREFIX, start)) {
+            return false;
+        }
+        return path.lastIndexOf('^', end - 1) < start;
+    }
+
+    private static String intern(String path, int start, int end) {
+        Table table = tables.get();
+        String id = table.find(path, start, end);
+        if (id == null) {
+            String found = path.substring(start, end);
+            id = shared.putIfAbsent(found, found);
+            if (id == null) {
+                id = found;
+            }
+            table.add(id);
+        }
+        return id;
+    }
+
+    /**
+     * Open addressing table of the IDs a thread has seen so far
+     */
+    private static class Table {
+        private String[] ids = new String[4096];
+        private int size;
+
+        /**
+         * @return the ID equal to the range of the path, or null if it was not seen yet
+         */
+        String find(String path, int start, int end) {
+            int length = end - start;
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + path.charAt(i);
+            }
+            int mask = ids.length - 1;
+            for (int slot = hash & mask; ids[slot] != null; slot = (slot + 1) & mask) {
+                String id = ids[slot];
+                if (id.length() == length && path.regionMatches(start, id, 0, length)) {
+                    return id;
+                }
+            }
+            return null;
+        }
+
+        void add(String id) {
+            if (2 * (size + 1) > ids.length) {
+                String[] old = ids;
+                ids = new String[2 * old.length];
+                for (String seen : old) {
+                    if (seen != null) {
+                        put(seen);
+                    }
+                }
+            }
+            put(id);
+            size++;
+        }
+
+        private void put(String id) {
+            // The hash of a string is the same as the one computed over its range of the path
+            int mask = ids.length - 1;
+            int slot = id.hashCode() & mask;
+            while (ids[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            ids[slot] = id;
+        }
+    }
+}
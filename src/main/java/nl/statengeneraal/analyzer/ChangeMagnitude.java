@@ -0,0 +1,173 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * How much of a law a modification changed: the number of characters inserted and deleted, and the similarity of the
+ * old and new text (1 for texts that only differ in whitespace, 0 for texts that have nothing in common).
+ * </p>
+ * <p>
+ * Characters are counted in the Markdown source, leaving out whitespace and '*' like the normalisation does, and only
+ * the part of an edit that differs counts: fixing a typo in a long paragraph is a change of one or two characters.
+ * </p>
+ * Without an edit list the magnitude is estimated from a MinHash sketch of the lines of both texts.
+ */
+public class ChangeMagnitude {
+    /**
+     * Number of line hashes kept in a sketch
+     */
+    static final int SKETCH_SIZE = 256;
+
+    public final int inserted;
+    public final int deleted;
+    public final double similarity;
+    /**
+     * Whether the magnitude was estimated rather than computed from the edits
+     */
+    public final boolean estimated;
+
+    private ChangeMagnitude(int inserted, int deleted, double similarity, boolean estimated) {
+        this.inserted = inserted;
+        this.deleted = deleted;
+        this.similarity = similarity;
+        this.estimated = estimated;
+    }
+
+    /**
+     * Computes the magnitude of a modification, or estimates it if the texts were not diffed
+     *
+     * @param comparison the texts of a modified law and their edits, if any
+     */
+    public static ChangeMagnitude of(MyDiffFormatter.FormatResult comparison) {
+        if (comparison.edits == null) {
+            return estimate(comparison.a, comparison.b);
+        }
+        return of(comparison.a, comparison.b, comparison.edits);
+    }
+
+    /**
+     * Computes the magnitude from the edits between the texts
+     */
+    public static ChangeMagnitude of(LawText a, LawText b, EditList edits) {
+        int inserted = 0;
+        int deleted = 0;
+        for (Edit edit : edits) {
+            String before = ModifyClassifier.strip(ModifyClassifier.getString(a, edit.getBeginA(), edit.getEndA()));
+            String after = ModifyClassifier.strip(ModifyClassifier.getString(b, edit.getBeginB(), edit.getEndB()));
+            int common = commonPrefix(before, after);
+            common += commonSuffix(before, after, common);
+            deleted += before.length() - common;
+            inserted += after.length() - common;
+        }
+        return new ChangeMagnitude(inserted, deleted, similarity(inserted + deleted, count(a) + count(b)), false);
+    }
+
+    /**
+     * Estimates the magnitude from the fraction of lines (ignoring whitespace) the texts share
+     */
+    public static ChangeMagnitude estimate(LawText a, LawText b) {
+        long[] sketchA = sketch(a);
+        long[] sketchB = sketch(b);
+        double similarity = jaccard(sketchA, sketchB);
+        int countA = count(a);
+        int countB = count(b);
+        return new ChangeMagnitude((int) Math.round(countB * (1 - similarity)),
+                (int) Math.round(countA * (1 - similarity)), similarity, true);
+    }
+
+    private static double similarity(int changed, int total) {
+        return total == 0 ? 1 : Math.max(0, 1 - (double) changed / total);
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param prefix the length of the common prefix, which the suffix may not overlap
+     */
+    private static int commonSuffix(String a, String b, int prefix) {
+        int length = Math.min(a.length(), b.length()) - prefix;
+        int i = 0;
+        while (i < length && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the number of characters of the text, leaving out whitespace and '*'
+     */
+    static int count(LawText text) {
+        byte[] content = text.getContent();
+        int count = 0;
+        for (byte c : content) {
+            // Continuation bytes of UTF-8 sequences do not start a character
+            if ((c & 0xC0) != 0x80 && !ModifyClassifier.isIgnored(c)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the smallest distinct hashes of the lines of the text, in ascending order
+     */
+    static long[] sketch(LawText text) {
+        long[] hashes = new long[text.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = mix(text.getLineHash(i));
+        }
+        Arrays.sort(hashes);
+        int distinct = 0;
+        for (int i = 0; i < hashes.length && distinct < SKETCH_SIZE; i++) {
+            if (i == 0 || hashes[i] != hashes[i - 1]) {
+                hashes[distinct++] = hashes[i];
+            }
+        }
+        return Arrays.copyOf(hashes, distinct);
+    }
+
+    /**
+     * Spreads a 32 bit line hash over 64 bits, so the smallest hashes are a random sample of the lines
+     */
+    private static long mix(int hash) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Estimates the Jaccard similarity of the sets of lines from the smallest hashes of their union
+     */
+    static double jaccard(long[] a, long[] b) {
+        if (a.length == 0 && b.length == 0) {
+            return 1;
+        }
+        int i = 0;
+        int j = 0;
+        int union = 0;
+        int shared = 0;
+        while (union < SKETCH_SIZE && (i < a.length || j < b.length)) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                i++;
+            } else if (i == a.length || b[j] < a[i]) {
+                j++;
+            } else {
+                i++;
+                j++;
+                shared++;
+            }
+            union++;
+        }
+        return (double) shared / union;
+    }
+}
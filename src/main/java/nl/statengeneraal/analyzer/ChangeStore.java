@@ -0,0 +1,443 @@
+package nl.statengeneraal.analyzer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * <p>
+ * The changes found by the analysis, kept outside the heap in a memory-mapped temporary file. As the history reaches
+ * further back, there are millions of changes (with their edits and articles); kept as objects, they would make the
+ * heap size and the garbage collection pauses grow with the length of the history.
+ * </p>
+ * <p>
+ * Changes are appended in the order they are found and read back in that order, decoded into new objects one at a
+ * time. The file is mapped in chunks, which are added as the store grows; a record may span two chunks. A record is
+ * its length followed by the fields of the change, and then those of its edits and articles.
+ * </p>
+ * <p>
+ * Appending is safe from several threads, reading is only done once all changes are appended.
+ * </p>
+ * The changes are sorted by date and BWB ID with an external merge sort: sorted runs of a bounded number of changes are
+ * spilled to stores of their own, which are then merged. Only one run is in the heap at a time. The stores of the runs
+ * map chunks sized to the run rather than full ones.
+ */
+public class ChangeStore implements Iterable<Analyze.Change> {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+    /**
+     * Smallest chunk mapped for a sorted run, one page
+     */
+    private static final int MIN_CHUNK_SIZE = 4096;
+    private static final String[] TYPES = {"add", "modify", "delete"};
+    /**
+     * Number of changes sorted in the heap at a time
+     */
+    private static final int RUN_SIZE = 100000;
+    static final Comparator<Analyze.Change> BY_DATE_AND_BWB_ID = new Comparator<Analyze.Change>() {
+        @Override
+        public int compare(Analyze.Change a, Analyze.Change b) {
+            // Dates formatted YYYY-MM-DD sort the same as strings
+            int byDate = a.date.compareTo(b.date);
+            return byDate != 0 ? byDate : a.bwbId.compareTo(b.bwbId);
+        }
+    };
+
+    private final int chunkSize;
+    private final File file;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(record);
+    private long end;
+    private long size;
+    private boolean closed;
+
+    /**
+     * Creates an empty store in a temporary file, which is deleted when the store is closed
+     */
+    public ChangeStore() throws IOException {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    ChangeStore(int chunkSize) throws IOException {
+        this.chunkSize = chunkSize;
+        file = File.createTempFile("changes", ".bin");
+        file.deleteOnExit();
+        channel = new RandomAccessFile(file, "rw").getChannel();
+    }
+
+    /**
+     * Appends a change with its edits and articles
+     */
+    public synchronized void append(Analyze.Change change) throws IOException {
+        record.reset();
+        writeString(change.date);
+        writeString(change.bwbId);
+        out.writeByte(typeOf(change.type));
+        writeString(change.before);
+        writeString(change.after);
+        writeInteger(change.charactersInserted);
+        writeInteger(change.charactersDeleted);
+        out.writeDouble(change.similarity != null ? change.similarity : Double.NaN);
+        writeString(change.fallback);
+        if (change.edits == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(change.edits.size());
+            for (Analyze.EditChange edit : change.edits) {
+                out.writeInt(edit.line);
+                writeString(edit.before);
+                writeString(edit.after);
+            }
+        }
+        if (change.articles == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(change.articles.size());
+            for (Analyze.ArticleChange article : change.articles) {
+                writeString(article.article);
+            }
+        }
+        out.flush();
+        writeInt(record.size());
+        write(record.toByteArray(), 0, record.size());
+        size++;
+    }
+
+    public void appendAll(Collection<Analyze.Change> changes) throws IOException {
+        for (Analyze.Change change : changes) {
+            append(change);
+        }
+    }
+
+    /**
+     * @return the number of changes in the store
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Sorts the changes by date, then BWB ID. Changes with the same date and BWB ID stay in the order they were
+     * appended, so the order is the same on every run
+     *
+     * @return a new store with the changes in sorted order, to be closed by the caller
+     */
+    public ChangeStore sort() throws IOException {
+        return sort(RUN_SIZE);
+    }
+
+    ChangeStore sort(int runSize) throws IOException {
+        long bytes;
+        long count;
+        synchronized (this) {
+            bytes = end;
+            count = size;
+        }
+        // A run of average changes, with some room for larger ones
+        long bytesPerChange = count > 0 ? bytes / count + 1 : 0;
+        List<ChangeStore> runs = new ArrayList<ChangeStore>();
+        try {
+            List<Analyze.Change> run = new ArrayList<Analyze.Change>((int) Math.min(count, runSize));
+            for (Analyze.Change change : this) {
+                run.add(change);
+                if (run.size() == runSize) {
+                    runs.add(spill(run, bytesPerChange * run.size() * 9 / 8));
+                    run.clear();
+                }
+            }
+            if (runs.isEmpty()) {
+                // Sorted in the heap
+                return spill(run, bytes);
+            }
+            runs.add(spill(run, bytesPerChange * run.size() * 9 / 8));
+            ChangeStore sorted = new ChangeStore(chunkSizeFor(bytes));
+            try {
+                merge(runs, sorted);
+            } catch (IOException e) {
+                sorted.close();
+                throw e;
+            }
+            return sorted;
+        } finally {
+            for (ChangeStore spilled : runs) {
+                spilled.close();
+            }
+        }
+    }
+
+    private ChangeStore spill(List<Analyze.Change> run, long bytes) throws IOException {
+        // Stable, so equal changes keep the order of the walk
+        Collections.sort(run, BY_DATE_AND_BWB_ID);
+        ChangeStore spilled = new ChangeStore(chunkSizeFor(bytes));
+        try {
+            spilled.appendAll(run);
+        } catch (IOException e) {
+            spilled.close();
+            throw e;
+        }
+        return spilled;
+    }
+
+    /**
+     * @return the size of the chunks of a store for about this many bytes, at most that of this store
+     */
+    private int chunkSizeFor(long bytes) {
+        return (int) Math.min(chunkSize, Math.max(MIN_CHUNK_SIZE, bytes));
+    }
+
+    /**
+     * Merges the sorted runs into the store. Equal changes are taken from the earliest run first
+     */
+    private static void merge(List<ChangeStore> runs, ChangeStore into) throws IOException {
+        PriorityQueue<Head> heads = new PriorityQueue<Head>(runs.size());
+        for (int i = 0; i < runs.size(); i++) {
+            Iterator<Analyze.Change> changes = runs.get(i).iterator();
+            if (changes.hasNext()) {
+                heads.add(new Head(i, changes));
+            }
+        }
+        while (!heads.isEmpty()) {
+            Head head = heads.poll();
+            into.append(head.change);
+            if (head.advance()) {
+                heads.add(head);
+            }
+        }
+    }
+
+    /**
+     * The next change of a sorted run
+     */
+    private static class Head implements Comparable<Head> {
+        private final int run;
+        private final Iterator<Analyze.Change> changes;
+        private Analyze.Change change;
+
+        Head(int run, Iterator<Analyze.Change> changes) {
+            this.run = run;
+            this.changes = changes;
+            advance();
+        }
+
+        boolean advance() {
+            change = changes.hasNext() ? changes.next() : null;
+            return change != null;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            int byChange = BY_DATE_AND_BWB_ID.compare(change, other.change);
+            return byChange != 0 ? byChange : run - other.run;
+        }
+    }
+
+    /**
+     * @return the changes in the order they were appended
+     */
+    @Override
+    public Iterator<Analyze.Change> iterator() {
+        final long stop;
+        synchronized (this) {
+            stop = end;
+        }
+        return new Iterator<Analyze.Change>() {
+            private long position;
+
+            @Override
+            public boolean hasNext() {
+                return position < stop;
+            }
+
+            @Override
+            public Analyze.Change next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                byte[] length = read(position, 4);
+                byte[] bytes = read(position + 4, ByteBuffer.wrap(length).getInt());
+                position += 4 + bytes.length;
+                try {
+                    return decode(new DataInputStream(new ByteArrayInputStream(bytes)));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Corrupt change at " + position, e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static Analyze.Change decode(DataInputStream in) throws IOException {
+        String date = readString(in);
+        String bwbId = readString(in);
+        Analyze.Change change = new Analyze.Change(date, bwbId, TYPES[in.readByte()], readString(in), readString(in));
+        change.charactersInserted = readInteger(in);
+        change.charactersDeleted = readInteger(in);
+        double similarity = in.readDouble();
+        change.similarity = Double.isNaN(similarity) ? null : similarity;
+        change.fallback = readString(in);
+        int edits = in.readInt();
+        if (edits >= 0) {
+            change.edits = new ArrayList<Analyze.EditChange>(edits);
+            for (int i = 0; i < edits; i++) {
+                change.edits.add(new Analyze.EditChange(date, bwbId, in.readInt(), readString(in), readString(in)));
+            }
+        }
+        int articles = in.readInt();
+        if (articles >= 0) {
+            change.articles = new ArrayList<Analyze.ArticleChange>(articles);
+            for (int i = 0; i < articles; i++) {
+                change.articles.add(new Analyze.ArticleChange(date, bwbId, readString(in)));
+            }
+        }
+        return change;
+    }
+
+    private static int typeOf(String type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i].equals(type)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(type);
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private void writeInteger(Integer value) throws IOException {
+        out.writeInt(value != null ? value : Integer.MIN_VALUE);
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        int value = in.readInt();
+        return value == Integer.MIN_VALUE ? null : value;
+    }
+
+    private void writeInt(int value) throws IOException {
+        write(ByteBuffer.allocate(4).putInt(value).array(), 0, 4);
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int chunk = (int) (end / chunkSize);
+            if (chunk == chunks.size()) {
+                chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) chunk * chunkSize, chunkSize));
+            }
+            ByteBuffer buffer = chunks.get(chunk).duplicate();
+            buffer.position((int) (end % chunkSize));
+            int count = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+            end += count;
+        }
+    }
+
+    private byte[] read(long position, int length) {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            ByteBuffer buffer;
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("The store is closed");
+                }
+                buffer = chunks.get((int) (position / chunkSize)).duplicate();
+            }
+            buffer.position((int) (position % chunkSize));
+            int count = Math.min(length - offset, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            offset += count;
+            position += count;
+        }
+        return bytes;
+    }
+
+    /**
+     * Unmaps the chunks and deletes the file. The changes can no longer be read, so no iterator may be in use
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (MappedByteBuffer chunk : chunks) {
+            unmap(chunk);
+        }
+        chunks.clear();
+        channel.close();
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Unmaps a chunk now instead of when it is garbage collected, which for a buffer that has moved to the old
+     * generation may be never before the end of the run. This needs the JDK internals that free direct buffers; where
+     * they are not available, the chunk stays mapped until it is collected
+     */
+    private static void unmap(MappedByteBuffer chunk) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                // Java 8: the cleaner of the buffer itself
+                Method cleaner = chunk.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object bufferCleaner = cleaner.invoke(chunk);
+                if (bufferCleaner != null) {
+                    bufferCleaner.getClass().getMethod("clean").invoke(bufferCleaner);
+                }
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), chunk);
+        } catch (Exception e) {
+            // Left to the garbage collector
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package nl.statengeneraal.analyzer;
+
+import org.supercsv.io.CsvListWriter;
+import org.supercsv.io.ICsvListWriter;
+import org.supercsv.prefs.CsvPreference;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>
+ * Writes a CSV table as a gzip file of independently compressed chunks, which are compressed in parallel. A chunk ends
+ * at the end of the first row after it reached the chunk size, so every chunk holds whole rows. The chunks are gzip
+ * members of their own; together they are an ordinary gzip file, which any gzip reader decompresses as a whole.
+ * </p>
+ * <p>
+ * Next to the file (with .index appended to its name) a CSV index holds a row per chunk: its offset and length in the
+ * file, the offset and length of its UTF-8 text in the table, and its number of rows (the header included). A reader
+ * can decompress any chunk on its own, so the chunks can be read back in parallel.
+ * </p>
+ * Rows end at a line break outside quotes; CSV escapes a quote in a quoted cell by doubling it, so a quote always
+ * switches between inside and outside quotes.
+ */
+public class ChunkedGzipWriter extends Writer {
+    public static final String INDEX_SUFFIX = ".index";
+    static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final OutputStream out;
+    private final int chunkSize;
+    private final ExecutorService compressors;
+    /**
+     * Whether the compressors are this writer's own, to shut down when it is closed
+     */
+    private final boolean ownCompressors;
+    /**
+     * The chunks being compressed, in the order they are written. Bounded, so the writer does not get far ahead
+     */
+    private final Deque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+    private final int maxPending;
+    private final ICsvListWriter index;
+    private char[] buffer;
+    private int length;
+    private int rows;
+    private boolean quoted;
+    private long offset;
+    private long textOffset;
+    private boolean closed;
+
+    /**
+     * @param threads the number of threads that compress chunks
+     */
+    public ChunkedGzipWriter(File file, int threads) throws IOException {
+        this(file, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    ChunkedGzipWriter(File file, int threads, int chunkSize) throws IOException {
+        this(file, newCompressors(threads), true, threads, chunkSize);
+    }
+
+    /**
+     * @param compressors the threads that compress chunks, shared with other writers and not shut down by this one,
+     *                    see {@link #newCompressors(int)}
+     * @param threads     the number of those threads
+     */
+    public ChunkedGzipWriter(File file, ExecutorService compressors, int threads) throws IOException {
+        this(file, compressors, false, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    private ChunkedGzipWriter(File file, ExecutorService compressors, boolean ownCompressors, int threads,
+                              int chunkSize) throws IOException {
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.compressors = compressors;
+        this.ownCompressors = ownCompressors;
+        maxPending = 2 * threads;
+        buffer = new char[Math.min(chunkSize, 64 * 1024)];
+        OutputStream out = null;
+        ICsvListWriter index = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+            index = new CsvListWriter(new OutputStreamWriter(new FileOutputStream(indexOf(file)), "UTF-8"),
+                    CsvPreference.STANDARD_PREFERENCE);
+            index.writeHeader("Offset", "Length", "Text offset", "Text length", "Rows");
+        } catch (IOException e) {
+            // Nothing of this writer is left open when it cannot be created
+            if (ownCompressors) {
+                compressors.shutdownNow();
+            }
+            closeQuietly(out);
+            closeQuietly(index);
+            throw e;
+        }
+        this.out = out;
+        this.index = index;
+    }
+
+    /**
+     * @return a pool of daemon threads for compressing the chunks of one or more writers; the threads do not keep the
+     * JVM running if the pool is not shut down
+     */
+    public static ExecutorService newCompressors(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "gzip-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // The error that made it close is more interesting
+        }
+    }
+
+    /**
+     * @return the index file of a chunked file
+     */
+    public static File indexOf(File file) {
+        return new File(file.getPath() + INDEX_SUFFIX);
+    }
+
+    /**
+     * @return whether the file starts like a gzip file
+     */
+    public static boolean isGzip(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int count) throws IOException {
+        if (closed) {
+            throw new IOException(file + " is closed");
+        }
+        for (int i = offset; i < offset + count; i++) {
+            char c = chars[i];
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            }
+            buffer[length++] = c;
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '\n' && !quoted) {
+                rows++;
+                if (length >= chunkSize) {
+                    submit();
+                }
+            }
+        }
+    }
+
+    private void submit() throws IOException {
+        final char[] text = Arrays.copyOf(buffer, length);
+        final int chunkRows = rows;
+        pending.add(compressors.submit(new Callable<Chunk>() {
+            @Override
+            public Chunk call() throws IOException {
+                return Chunk.compress(text, chunkRows);
+            }
+        }));
+        length = 0;
+        rows = 0;
+        while (pending.size() > maxPending) {
+            writeOldest();
+        }
+    }
+
+    private void writeOldest() throws IOException {
+        Chunk chunk;
+        try {
+            chunk = pending.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing " + file, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not compress a chunk of " + file, e.getCause());
+        }
+        out.write(chunk.compressed);
+        index.write(offset, chunk.compressed.length, textOffset, chunk.textLength, chunk.rows);
+        offset += chunk.compressed.length;
+        textOffset += chunk.textLength;
+    }
+
+    /**
+     * Does not end the chunk, chunks only end with a row
+     */
+    @Override
+    public void flush() throws IOException {
+    }
+
+    /**
+     * Compresses and writes the last chunk, and the index
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (length > 0) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeOldest();
+            }
+        } finally {
+            if (ownCompressors) {
+                compressors.shutdownNow();
+            } else {
+                // Leaves the shared threads to the other writers
+                for (Future<Chunk> chunk : pending) {
+                    chunk.cancel(true);
+                }
+            }
+            try {
+                out.close();
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * A compressed chunk
+     */
+    private static class Chunk {
+        final byte[] compressed;
+        final int textLength;
+        final int rows;
+
+        Chunk(byte[] compressed, int textLength, int rows) {
+            this.compressed = compressed;
+            this.textLength = textLength;
+            this.rows = rows;
+        }
+
+        static Chunk compress(char[] text, int rows) throws IOException {
+            byte[] bytes = new String(text).getBytes(UTF8);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed, 8192);
+            gzip.write(bytes);
+            gzip.close();
+            return new Chunk(compressed.toByteArray(), bytes.length, rows);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>
+ * Classifies a range of the diff entries of a single commit, splitting the range in halves until it is small enough
+ * to handle sequentially. This keeps commits that touch thousands of laws (such as the initial import) from
+ * dominating the running time.
+ * </p>
+ * The resulting changes are in the same order as the entries they were computed from.
+ */
+public class ClassifyEntriesTask extends RecursiveTask<List<Analyze.Change>> {
+    private static final long serialVersionUID = 1L;
+    /**
+     * Commits with at least this many entries are classified in parallel
+     */
+    public static final int PARALLEL_THRESHOLD = 256;
+    /**
+     * Ranges of at most this many entries are classified by a single worker
+     */
+    static final int SEQUENTIAL_THRESHOLD = 64;
+
+    private final ThreadLocalFormatters formatters;
+    private final List<DiffEntry> entries;
+    private final int from;
+    private final int to;
+    private final String date;
+
+    public ClassifyEntriesTask(ThreadLocalFormatters formatters, List<DiffEntry> entries, int from, int to, String date) {
+        this.formatters = formatters;
+        this.entries = entries;
+        this.from = from;
+        this.to = to;
+        this.date = date;
+    }
+
+    @Override
+    protected List<Analyze.Change> compute() {
+        if (to - from <= SEQUENTIAL_THRESHOLD) {
+            return classifySequentially();
+        }
+
+        int middle = (from + to) >>> 1;
+        ClassifyEntriesTask left = new ClassifyEntriesTask(formatters, entries, from, middle, date);
+        ClassifyEntriesTask right = new ClassifyEntriesTask(formatters, entries, middle, to, date);
+        left.fork();
+        List<Analyze.Change> changes = right.compute();
+        List<Analyze.Change> leftChanges = left.join();
+        leftChanges.addAll(changes);
+        return leftChanges;
+    }
+
+    private List<Analyze.Change> classifySequentially() {
+        MyDiffFormatter formatter = formatters.get();
+        List<Analyze.Change> changes = new ArrayList<Analyze.Change>(to - from);
+        try {
+            for (int i = from; i < to; i++) {
+                Analyze.Change change = Analyze.classifyEntry(formatter, entries.get(i), date);
+                if (change != null) {
+                    changes.add(change);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not classify changes for " + date, e);
+        }
+        return changes;
+    }
+
+    /**
+     * Hands out one formatter (and so one ObjectReader) per worker thread, as neither is safe to share between threads
+     */
+    public static class ThreadLocalFormatters extends ThreadLocal<MyDiffFormatter> {
+        private final Repository repository;
+        private final Options options;
+        private final TextCache textCache;
+        private final FingerprintIndex fingerprints;
+        private final List<MyDiffFormatter> created = new CopyOnWriteArrayList<MyDiffFormatter>();
+
+        public ThreadLocalFormatters(Repository repository, Options options) throws IOException {
+            this.repository = repository;
+            this.options = options;
+            this.textCache = new TextCache(options.textCacheSize);
+            this.fingerprints = options.fingerprints != null ? new FingerprintIndex(options.fingerprints) : null;
+        }
+
+        @Override
+        protected MyDiffFormatter initialValue() {
+            MyDiffFormatter formatter = new MyDiffFormatter(System.out);
+            formatter.setRepository(repository);
+            formatter.setUsePackDeltas(options.usePackDeltas);
+            formatter.setDiffBudget(new DiffBudget(options.maxDiffSize, options.diffTimeout));
+            formatter.setTextCache(textCache);
+            formatter.setFingerprints(fingerprints);
+            if (options.algorithm != null) {
+                formatter.setDiffAlgorithm(DiffAlgorithm.getAlgorithm(options.algorithm));
+            }
+            created.add(formatter);
+            return formatter;
+        }
+
+        public Repository getRepository() {
+            return repository;
+        }
+
+        /**
+         * Releases the readers of all formatters handed out so far, and closes the fingerprint index
+         */
+        public void release() throws IOException {
+            for (MyDiffFormatter formatter : created) {
+                formatter.release();
+            }
+            created.clear();
+            if (fingerprints != null) {
+                fingerprints.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * The reader of the commit walk, which keeps the bodies of the commits it read most recently. The walk does not retain
+ * the bodies, but parses each commit shortly before it returns it; when the date is then taken from the body (see
+ * {@link CommitDates}) it comes from here, so every commit is read from the repository once.
+ * </p>
+ * A body is dropped when more than the given number of newer commits were read, for instance on the side branches of
+ * merges. Such a body is simply read again.
+ */
+class CommitBodyReader extends ObjectReader {
+    static final int DEFAULT_CAPACITY = 64;
+
+    private final ObjectReader reader;
+    private final Map<ObjectId, byte[]> bodies;
+
+    CommitBodyReader(ObjectReader reader, final int capacity) {
+        this.reader = reader;
+        bodies = new LinkedHashMap<ObjectId, byte[]>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ObjectId, byte[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public ObjectLoader open(AnyObjectId id, int typeHint) throws IOException {
+        byte[] body = bodies.get(id);
+        if (body != null) {
+            return new ObjectLoader.SmallObject(Constants.OBJ_COMMIT, body);
+        }
+        ObjectLoader loader = reader.open(id, typeHint);
+        if (loader.getType() != Constants.OBJ_COMMIT) {
+            return loader;
+        }
+        body = loader.getCachedBytes();
+        bodies.put(id.copy(), body);
+        return new ObjectLoader.SmallObject(Constants.OBJ_COMMIT, body);
+    }
+
+    @Override
+    public ObjectReader newReader() {
+        return reader.newReader();
+    }
+
+    @Override
+    public Collection<ObjectId> resolve(AbbreviatedObjectId id) throws IOException {
+        return reader.resolve(id);
+    }
+
+    @Override
+    public Set<ObjectId> getShallowCommits() throws IOException {
+        return reader.getShallowCommits();
+    }
+
+    @Override
+    public void walkAdviceBeginCommits(RevWalk walk, Collection<RevCommit> roots) throws IOException {
+        reader.walkAdviceBeginCommits(walk, roots);
+    }
+
+    @Override
+    public void walkAdviceEnd() {
+        reader.walkAdviceEnd();
+    }
+
+    @Override
+    public void release() {
+        bodies.clear();
+        reader.release();
+    }
+}
@@ -0,0 +1,215 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.RawParseUtils;
+
+import java.io.IOException;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * The dates of the commits of the law repository. Each commit holds the changes of one day, with the date as its
+ * message (YYYY-MM-DD). The date is parsed from the raw commit buffer, without decoding the message or matching
+ * {@link Analyze#DATE_REGEX}, into a day number counted from 1970-01-01.
+ * </p>
+ * <p>
+ * The date can also be taken from the time the commit was authored or committed, see {@link Source}. The walk does not
+ * retain the bodies of the commits; the body the date is taken from comes from the walk's reader, which keeps the
+ * commits it just parsed (see {@link CommitBodyReader}), and is dropped right after.
+ * </p>
+ * Dates are written as interned strings, so all changes of a day share one string.
+ */
+public final class CommitDates {
+    /**
+     * The day number of a commit whose message is not a date
+     */
+    public static final int NONE = Integer.MIN_VALUE;
+    private static final int DATE_LENGTH = "YYYY-MM-DD".length();
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static final ConcurrentMap<Integer, String> formatted = new ConcurrentHashMap<Integer, String>();
+
+    private CommitDates() {
+    }
+
+    /**
+     * Where the date of a commit comes from
+     */
+    public enum Source {
+        /**
+         * The message, which is the date; commits with another message are skipped
+         */
+        MESSAGE,
+        /**
+         * The author time, on the day it was in the author's time zone
+         */
+        AUTHOR,
+        /**
+         * The commit time, on the day it was in the time zone of the analysis. The time is kept in the parsed commit,
+         * so the commit is not read again
+         */
+        COMMITTER
+    }
+
+    /**
+     * @param reader reads the body of the commit if the walk did not retain it
+     * @param zone   the time zone of the analysis, for the commit time
+     * @return the day of the commit, or {@link #NONE} if it has no date
+     */
+    public static int dayOf(RevCommit commit, ObjectReader reader, Source source, TimeZone zone) throws IOException {
+        switch (source) {
+            case AUTHOR:
+                return parseAuthor(getBody(commit, reader));
+            case COMMITTER:
+                long time = commit.getCommitTime() * 1000L;
+                return toDay(time, zone.getOffset(time));
+            default:
+                return parseMessage(getBody(commit, reader));
+        }
+    }
+
+    /**
+     * @return the message of the commit, without surrounding whitespace
+     */
+    public static String getMessage(RevCommit commit, ObjectReader reader) throws IOException {
+        byte[] raw = getBody(commit, reader);
+        int start = RawParseUtils.commitMessage(raw, 0);
+        return start < 0 ? "" : RawParseUtils.decode(raw, start, raw.length).trim();
+    }
+
+    private static byte[] getBody(RevCommit commit, ObjectReader reader) throws IOException {
+        byte[] raw = commit.getRawBuffer();
+        // Small enough to be loaded as a whole; the loader does not keep it
+        return raw != null ? raw : reader.open(commit, Constants.OBJ_COMMIT).getCachedBytes();
+    }
+
+    /**
+     * @param raw the body of a commit
+     * @return the day the commit was authored, or {@link #NONE} if it has no author
+     */
+    public static int parseAuthor(byte[] raw) {
+        int start = RawParseUtils.author(raw, 0);
+        PersonIdent author = start < 0 ? null : RawParseUtils.parsePersonIdent(raw, start);
+        if (author == null) {
+            return NONE;
+        }
+        return toDay(author.getWhen().getTime(), author.getTimeZoneOffset() * 60 * 1000);
+    }
+
+    private static int toDay(long time, int zoneOffset) {
+        return (int) Math.floorDiv(time + zoneOffset, MILLIS_PER_DAY);
+    }
+
+    /**
+     * @param raw the body of a commit
+     * @return the day of the date in the message of the commit, or {@link #NONE} if the message is not a date
+     */
+    public static int parseMessage(byte[] raw) {
+        int start = RawParseUtils.commitMessage(raw, 0);
+        return start < 0 ? NONE : parse(raw, start, raw.length);
+    }
+
+    /**
+     * Parses a date YYYY-MM-DD, which may be surrounded by whitespace
+     *
+     * @return the day of the date, or {@link #NONE} if the range holds anything else
+     */
+    public static int parse(byte[] raw, int start, int end) {
+        while (start < end && isWhitespace(raw[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(raw[end - 1])) {
+            end--;
+        }
+        if (end - start != DATE_LENGTH || raw[start + 4] != '-' || raw[start + 7] != '-') {
+            return NONE;
+        }
+        int year = digits(raw, start, 4);
+        int month = digits(raw, start + 5, 2);
+        int day = digits(raw, start + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return NONE;
+        }
+        return toDay(year, month, day);
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /**
+     * @return the number, or -1 if one of the characters is not a digit
+     */
+    private static int digits(byte[] raw, int start, int count) {
+        int number = 0;
+        for (int i = start; i < start + count; i++) {
+            if (raw[i] < '0' || raw[i] > '9') {
+                return -1;
+            }
+            number = 10 * number + raw[i] - '0';
+        }
+        return number;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return isLeapYear(year) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * @return the number of days since 1970-01-01 (negative before it) in the proleptic Gregorian calendar
+     */
+    static int toDay(int year, int month, int day) {
+        // Count years from March, so the leap day is the last day of a year
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * @return the date YYYY-MM-DD of the day
+     */
+    public static String format(int day) {
+        String date = formatted.get(day);
+        if (date == null) {
+            // The inverse of toDay
+            int z = day + 719468;
+            int era = (z >= 0 ? z : z - 146096) / 146097;
+            int dayOfEra = z - era * 146097;
+            int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            int shiftedMonth = (5 * dayOfYear + 2) / 153;
+            int dayOfMonth = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+            int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+            int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+            // By hand, as the digits of String.format depend on the default locale
+            StringBuilder formatting = new StringBuilder("YYYY-MM-DD".length());
+            for (int power = 1000; power > 1 && year >= 0 && year < power; power /= 10) {
+                formatting.append('0');
+            }
+            formatting.append(year).append('-');
+            formatting.append(month < 10 ? "0" : "").append(month).append('-');
+            formatting.append(dayOfMonth < 10 ? "0" : "").append(dayOfMonth);
+            date = formatting.toString();
+            // Another thread may have formatted the day in the meantime
+            String other = formatted.putIfAbsent(day, date);
+            if (other != null) {
+                date = other;
+            }
+        }
+        return date;
+    }
+}
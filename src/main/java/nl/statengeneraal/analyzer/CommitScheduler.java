@@ -0,0 +1,130 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Schedules the classification of commit pairs on a work-stealing pool, largest first.
+ * </p>
+ * Most daily commits touch a handful of laws, while a few touch thousands. The cost of each pair is estimated up
+ * front from the number of entries and the sizes of the blobs that have to be diffed, which can be read from the
+ * object headers without inflating the blobs. Starting the most expensive pairs first keeps a multi-core run from
+ * ending with a long single-threaded tail.
+ */
+public class CommitScheduler {
+    /**
+     * Estimated cost of an entry that does not need a diff, in bytes of blob content
+     */
+    private static final long ENTRY_COST = 512;
+
+    private final ObjectReader reader;
+    private final ForkJoinPool pool;
+    private final ClassifyEntriesTask.ThreadLocalFormatters formatters;
+    private final UnitAppender appender;
+    private final List<CommitUnit> units = new ArrayList<CommitUnit>();
+
+    /**
+     * @param appender where to store the changes of each unit once it is classified, or null to keep them in the units
+     */
+    public CommitScheduler(Repository repository, ForkJoinPool pool, ClassifyEntriesTask.ThreadLocalFormatters formatters,
+                           UnitAppender appender) {
+        this.reader = repository.newObjectReader();
+        this.pool = pool;
+        this.formatters = formatters;
+        this.appender = appender;
+    }
+
+    /**
+     * Adds the entries of a commit pair to the work to be done
+     */
+    public CommitUnit add(String date, List<DiffEntry> entries) throws IOException {
+        CommitUnit unit = new CommitUnit(units.size(), date, entries, estimateCost(entries));
+        units.add(unit);
+        return unit;
+    }
+
+    /**
+     * Classifies all units added so far, starting with the most expensive ones
+     *
+     * @return the units in the order they were added, with their changes computed unless they were handed to the
+     * appender
+     */
+    public List<CommitUnit> run() {
+        List<ForkJoinTask<Void>> tasks = new ArrayList<ForkJoinTask<Void>>(units.size());
+        for (CommitUnit unit : largestFirst()) {
+            tasks.add(pool.submit(new ClassifyUnitTask(unit)));
+        }
+        for (ForkJoinTask<Void> task : tasks) {
+            task.join();
+        }
+        return units;
+    }
+
+    /**
+     * @return the units in the order they are submitted: the most expensive first, ties in the order they were added
+     */
+    List<CommitUnit> largestFirst() {
+        List<CommitUnit> largestFirst = new ArrayList<CommitUnit>(units);
+        Collections.sort(largestFirst, CommitUnit.LARGEST_FIRST);
+        return largestFirst;
+    }
+
+    long estimateCost(List<DiffEntry> entries) throws IOException {
+        long cost = 0;
+        for (DiffEntry entry : entries) {
+            cost += ENTRY_COST;
+            if (entry.getChangeType() == DiffEntry.ChangeType.MODIFY) {
+                cost += blobSize(entry.getOldId()) + blobSize(entry.getNewId());
+            }
+        }
+        return cost;
+    }
+
+    private long blobSize(AbbreviatedObjectId id) throws IOException {
+        if (id == null || !id.isComplete()) {
+            return 0;
+        }
+        return reader.getObjectSize(id.toObjectId(), Constants.OBJ_BLOB);
+    }
+
+    public void release() {
+        reader.release();
+    }
+
+    /**
+     * Classifies the entries of a unit, and stores its changes as soon as they are known
+     */
+    private class ClassifyUnitTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final CommitUnit unit;
+
+        ClassifyUnitTask(CommitUnit unit) {
+            this.unit = unit;
+        }
+
+        @Override
+        protected void compute() {
+            List<DiffEntry> entries = unit.getEntries();
+            unit.setChanges(new ClassifyEntriesTask(formatters, entries, 0, entries.size(), unit.date).invoke());
+            if (appender != null) {
+                try {
+                    appender.add(unit);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not store changes for " + unit.date, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffEntry;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The diff entries of one commit pair, and the changes they turned out to contain once classified
+ */
+public class CommitUnit {
+    static final Comparator<CommitUnit> LARGEST_FIRST = new Comparator<CommitUnit>() {
+        @Override
+        public int compare(CommitUnit a, CommitUnit b) {
+            if (a.estimatedCost != b.estimatedCost) {
+                return a.estimatedCost > b.estimatedCost ? -1 : 1;
+            }
+            return a.index - b.index;
+        }
+    };
+
+    /**
+     * Position of the commit pair in the walk
+     */
+    public final int index;
+    public final String date;
+    private List<DiffEntry> entries;
+    /**
+     * Estimated cost of classifying the entries, or 0 if it was not estimated
+     */
+    public final long estimatedCost;
+    private List<Analyze.Change> changes;
+
+    CommitUnit(int index, String date, List<DiffEntry> entries, long estimatedCost) {
+        this.index = index;
+        this.date = date;
+        this.entries = entries;
+        this.estimatedCost = estimatedCost;
+    }
+
+    /**
+     * @return the entries, or null once the changes are known
+     */
+    public List<DiffEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return the changes, or null before they are known or once a {@link UnitAppender} stored them
+     */
+    public List<Analyze.Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Sets the changes of the classified entries, which are no longer needed then
+     */
+    void setChanges(List<Analyze.Change> changes) {
+        this.changes = changes;
+        entries = null;
+    }
+
+    /**
+     * Drops the changes, once they are stored
+     */
+    void release() {
+        changes = null;
+    }
+}
@@ -0,0 +1,103 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.SequenceComparator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Limits on diffing a single entry. The histogram diff falls back to Myers' algorithm on highly repetitive texts (such
+ * as large tables), which can take minutes for a single law. Texts over the size limit are not diffed at all, and a
+ * diff that runs past the time limit is abandoned.
+ * </p>
+ * Entries over budget are compared by their lines without whitespace and '*' instead, see
+ * {@link ModifyClassifier#differsOutsideWhitespace}.
+ */
+public class DiffBudget {
+    /**
+     * Number of comparisons between looking at the clock
+     */
+    private static final int CHECK_INTERVAL = 4096;
+
+    /**
+     * The combined size in bytes of the old and new text above which they are not diffed
+     */
+    private final long maxSize;
+    private final long timeoutNanos;
+
+    public DiffBudget(long maxSize, long timeoutMillis) {
+        this.maxSize = maxSize;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * Why an entry was not diffed
+     */
+    public enum Exceeded {
+        SIZE,
+        TIME
+    }
+
+    public boolean fits(byte[] a, byte[] b) {
+        return (long) a.length + b.length <= maxSize;
+    }
+
+    /**
+     * @return a comparator that compares like the given one until the time for a diff started now runs out
+     */
+    public SequenceComparator<RawText> startClock(SequenceComparator<RawText> comparator) {
+        return new DeadlineComparator(comparator, System.nanoTime() + timeoutNanos);
+    }
+
+    /**
+     * Thrown from within the diff algorithm when the deadline has passed, the only way to stop it early
+     */
+    public static class TimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        TimeoutException() {
+            super("Diff took too long");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            // Caught right away, so the stack trace is never used
+            return this;
+        }
+    }
+
+    private static class DeadlineComparator extends SequenceComparator<RawText> {
+        private final SequenceComparator<RawText> comparator;
+        private final long deadline;
+        private int calls;
+
+        DeadlineComparator(SequenceComparator<RawText> comparator, long deadline) {
+            this.comparator = comparator;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean equals(RawText a, int ai, RawText b, int bi) {
+            tick();
+            return comparator.equals(a, ai, b, bi);
+        }
+
+        @Override
+        public int hash(RawText seq, int ptr) {
+            tick();
+            return comparator.hash(seq, ptr);
+        }
+
+        @Override
+        public Edit reduceCommonStartEnd(RawText a, RawText b, Edit e) {
+            return comparator.reduceCommonStartEnd(a, b, e);
+        }
+
+        private void tick() {
+            if (++calls % CHECK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+                throw new TimeoutException();
+            }
+        }
+    }
+}
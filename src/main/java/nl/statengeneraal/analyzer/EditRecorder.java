@@ -0,0 +1,68 @@
+package nl.statengeneraal.analyzer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Records the normative edits of modified laws for the edit-level output, with the text a reader sees before and
+ * after each edit.
+ * </p>
+ * The changes are kept in the {@link ChangeStore} until the results are written, so only an excerpt of each text is
+ * kept there, or its id when the full texts are written to an {@link EditTexts} side file.
+ */
+public class EditRecorder {
+    /**
+     * Marks an excerpt that was cut off
+     */
+    private static final String ELLIPSIS = "\u2026";
+
+    private final int excerptLength;
+    private final EditTexts texts;
+
+    /**
+     * @param excerptLength the maximum number of characters of a before or after text
+     * @param texts         the side file to write the full texts to, or null to keep excerpts instead
+     */
+    public EditRecorder(int excerptLength, EditTexts texts) {
+        this.excerptLength = excerptLength;
+        this.texts = texts;
+    }
+
+    /**
+     * @param normativeEdits the normative edits of a modified law with their rendered texts, as collected by
+     *                       {@link ModifyClassifier#classify(MyDiffFormatter.FormatResult, List)}
+     * @return the edits, in the order they appear in the law
+     */
+    public List<Analyze.EditChange> record(String date, String bwbId, List<ModifyClassifier.RenderedEdit> normativeEdits) throws IOException {
+        List<Analyze.EditChange> changes = new ArrayList<Analyze.EditChange>(normativeEdits.size());
+        for (ModifyClassifier.RenderedEdit edit : normativeEdits) {
+            changes.add(new Analyze.EditChange(date, bwbId, edit.edit.getBeginB() + 1, keep(edit.before), keep(edit.after)));
+        }
+        return changes;
+    }
+
+    private String keep(String text) throws IOException {
+        if (texts != null) {
+            return texts.add(text);
+        }
+        if (text.length() <= excerptLength) {
+            return text;
+        }
+        int end = excerptLength;
+        if (Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end) + ELLIPSIS;
+    }
+
+    /**
+     * Finishes the side file, if any
+     */
+    public void close() throws IOException {
+        if (texts != null) {
+            texts.close();
+        }
+    }
+}
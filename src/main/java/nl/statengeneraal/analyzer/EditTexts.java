@@ -0,0 +1,65 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Side file holding the full texts of the edits, each distinct text once. A text is addressed by its git blob id, so
+ * <code>git hash-object</code> gives the same id for it. The file is a sequence of records
+ * </p>
+ * <pre>
+ * &lt;id&gt; &lt;length in bytes&gt;\n
+ * &lt;UTF-8 text&gt;\n
+ * </pre>
+ * Texts are written as soon as they are added, so only their ids stay in memory.
+ */
+public class EditTexts {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final OutputStream out;
+    private final Set<ObjectId> written = Collections.newSetFromMap(new ConcurrentHashMap<ObjectId, Boolean>());
+
+    public EditTexts(File file) throws IOException {
+        this.out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+    }
+
+    /**
+     * Writes the text if it was not written before. Safe to call from several threads
+     *
+     * @return the id of the text, or the empty string for an empty text
+     */
+    public String add(String text) throws IOException {
+        if (text.isEmpty()) {
+            return "";
+        }
+        byte[] bytes = text.getBytes(UTF8);
+        ObjectId id = new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, bytes);
+        if (written.add(id)) {
+            byte[] header = Constants.encodeASCII(id.name() + " " + bytes.length + "\n");
+            synchronized (out) {
+                out.write(header);
+                out.write(bytes);
+                out.write('\n');
+            }
+        }
+        return id.name();
+    }
+
+    public void close() throws IOException {
+        synchronized (out) {
+            out.close();
+        }
+    }
+}
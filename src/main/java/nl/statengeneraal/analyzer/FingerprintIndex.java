@@ -0,0 +1,238 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.RawParseUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <p>
+ * Persistent index of the fingerprint of every version of a law: a 128 bit hash of its normalised text (rendered,
+ * without whitespace and '*', see {@link ModifyClassifier#normalise}). Many daily commits only reformat whitespace,
+ * emphasis or anchors; such a modification is recognised by comparing the fingerprints of its versions, and only
+ * versions whose text differs are diffed. A version is normalised once, also over several runs.
+ * </p>
+ * <p>
+ * The file is a sequence of 36 byte records, the blob id of a version followed by its fingerprint. In memory the index
+ * is an open addressing table of primitive arrays, as it holds every version of every law in the history.
+ * </p>
+ * An incomplete record at the end of the file (from a run that was killed) is cut off when the index is opened.
+ */
+public class FingerprintIndex {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int ID_WORDS = Constants.OBJECT_ID_LENGTH / 4;
+    private static final int RECORD_SIZE = Constants.OBJECT_ID_LENGTH + Fingerprint.LENGTH;
+
+    private final FileChannel file;
+    private long fileEnd;
+    /**
+     * The blob ids in the table, {@link #ID_WORDS} words per slot
+     */
+    private int[] ids;
+    /**
+     * The fingerprints in the table, two words per slot
+     */
+    private long[] fingerprints;
+    private boolean[] used;
+    private int size;
+
+    /**
+     * Opens the index in the file, creating it if it does not exist
+     */
+    public FingerprintIndex(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "rw").getChannel();
+        long records = this.file.size() / RECORD_SIZE;
+        allocate(Math.max(1024, Integer.highestOneBit((int) Math.min(records, 1 << 28)) * 4));
+        read(records);
+    }
+
+    private void read(long records) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * RECORD_SIZE);
+        byte[] record = buffer.array();
+        long end = records * RECORD_SIZE;
+        long position = 0;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            while (buffer.hasRemaining()) {
+                if (file.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Fingerprint index ended early");
+                }
+            }
+            for (int offset = 0; offset < buffer.limit(); offset += RECORD_SIZE) {
+                put(ObjectId.fromRaw(record, offset), new Fingerprint(NB.decodeInt64(record, offset + Constants.OBJECT_ID_LENGTH),
+                        NB.decodeInt64(record, offset + Constants.OBJECT_ID_LENGTH + 8)));
+            }
+            position += buffer.limit();
+        }
+        fileEnd = end;
+        file.truncate(fileEnd);
+    }
+
+    /**
+     * @param blobId the blob id of a version of a law
+     * @return the fingerprint of its normalised text, or null if the version is not in the index
+     */
+    public synchronized Fingerprint get(AnyObjectId blobId) {
+        int slot = find(blobId);
+        return used[slot] ? new Fingerprint(fingerprints[2 * slot], fingerprints[2 * slot + 1]) : null;
+    }
+
+    /**
+     * Gets the fingerprint of a version of a law, normalising its text if it is not in the index yet. Safe to call from
+     * several threads
+     *
+     * @param blobId the blob id of the version
+     * @param text   the contents of the blob
+     */
+    public Fingerprint get(AnyObjectId blobId, LawText text) throws IOException {
+        Fingerprint fingerprint = get(blobId);
+        if (fingerprint != null) {
+            return fingerprint;
+        }
+        // Rendered outside the lock; two threads may render the same version, which is harmless
+        byte[] content = text.getContent();
+        fingerprint = Fingerprint.of(ModifyClassifier.normalise(RawParseUtils.decode(content, 0, content.length)).getBytes(UTF8));
+        synchronized (this) {
+            Fingerprint indexed = get(blobId);
+            if (indexed != null) {
+                return indexed;
+            }
+            ObjectId id = blobId.copy();
+            write(id, fingerprint);
+            put(id, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return whether both versions are in the index with the same fingerprint
+     */
+    public synchronized boolean isSame(AnyObjectId a, AnyObjectId b) {
+        Fingerprint fingerprint = get(a);
+        return fingerprint != null && fingerprint.equals(get(b));
+    }
+
+    /**
+     * @return the number of versions in the index
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private int find(AnyObjectId blobId) {
+        int mask = used.length - 1;
+        // The bytes of a blob id are already uniformly distributed
+        int slot = blobId.hashCode() & mask;
+        while (used[slot] && blobId.compareTo(ids, slot * ID_WORDS) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void put(AnyObjectId blobId, Fingerprint fingerprint) {
+        if (2 * (size + 1) > used.length) {
+            grow();
+        }
+        int slot = find(blobId);
+        if (!used[slot]) {
+            used[slot] = true;
+            size++;
+        }
+        blobId.copyRawTo(ids, slot * ID_WORDS);
+        fingerprints[2 * slot] = fingerprint.high;
+        fingerprints[2 * slot + 1] = fingerprint.low;
+    }
+
+    private void allocate(int capacity) {
+        ids = new int[capacity * ID_WORDS];
+        fingerprints = new long[2 * capacity];
+        used = new boolean[capacity];
+        size = 0;
+    }
+
+    private void grow() {
+        int[] oldIds = ids;
+        long[] oldFingerprints = fingerprints;
+        boolean[] oldUsed = used;
+        allocate(2 * oldUsed.length);
+        for (int slot = 0; slot < oldUsed.length; slot++) {
+            if (oldUsed[slot]) {
+                put(ObjectId.fromRaw(oldIds, slot * ID_WORDS), new Fingerprint(oldFingerprints[2 * slot], oldFingerprints[2 * slot + 1]));
+            }
+        }
+    }
+
+    private void write(ObjectId blobId, Fingerprint fingerprint) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        blobId.copyRawTo(record);
+        record.putLong(fingerprint.high).putLong(fingerprint.low);
+        record.flip();
+        while (record.hasRemaining()) {
+            fileEnd += file.write(record, fileEnd);
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * A 128 bit hash of a normalised text: the first 16 bytes of its SHA-1
+     */
+    public static final class Fingerprint {
+        static final int LENGTH = 16;
+
+        final long high;
+        final long low;
+
+        Fingerprint(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        /**
+         * @param normalised the UTF-8 bytes of a normalised text
+         */
+        public static Fingerprint of(byte[] normalised) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform supports SHA-1
+                throw new IllegalStateException(e);
+            }
+            byte[] hash = digest.digest(normalised);
+            return new Fingerprint(NB.decodeInt64(hash, 0), NB.decodeInt64(hash, 8));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint other = (Fingerprint) o;
+            return high == other.high && low == other.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) low;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%016x%016x", high, low);
+        }
+    }
+}
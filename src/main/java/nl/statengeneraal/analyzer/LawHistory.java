@@ -0,0 +1,237 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * The versions of each law, collected in one pass over the history and classified law by law.
+ * </p>
+ * <p>
+ * The tree scan only reports files whose blob changed, so each version in the chain of a law is a comparison of two
+ * different blobs, with the date it appeared. Laws that never change cost nothing, and the work grows with the number
+ * of versions rather than with the number of commits. As the versions of a law are compared by the same worker one
+ * after another, the old text of one comparison is the new text of the next, which is then still in the
+ * {@link TextCache}. A law that returns to an earlier text and then makes the same change again repeats a comparison;
+ * within the versions a worker compares together, such a comparison is only done once, and its change is copied with
+ * the new date.
+ * </p>
+ * <p>
+ * The walk does not wait for the end of the history: once a chain holds {@link #SEGMENT_SIZE} versions, they are
+ * compared on the pool while the walk goes on. Only the last, shorter segments of the chains are left for
+ * {@link #run}.
+ * </p>
+ * The changes are handed back per commit pair, in the order of the entries, so the results are the same as those of
+ * the other engines. A commit pair gets its changes when the last of its versions is compared, which for the pairs
+ * that touch many laws can be near the end.
+ */
+public class LawHistory {
+    /**
+     * Ranges of at most this many laws are classified by a single worker
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 16;
+    /**
+     * Number of versions of a law that are compared as soon as the walk has found them
+     */
+    static final int SEGMENT_SIZE = 32;
+
+    private final ForkJoinPool pool;
+    private final ClassifyEntriesTask.ThreadLocalFormatters formatters;
+    private final UnitAppender appender;
+    private final List<CommitUnit> units = new ArrayList<CommitUnit>();
+    /**
+     * The versions of each file not yet handed to the pool, by path, in the order of the walk
+     */
+    private final Map<String, List<Version>> chains = new LinkedHashMap<String, List<Version>>();
+    /**
+     * The segments handed to the pool during the walk
+     */
+    private final List<ForkJoinTask<?>> started = new ArrayList<ForkJoinTask<?>>();
+
+    /**
+     * @param appender where to store the changes of each unit once it is classified, or null to keep them in the units
+     */
+    public LawHistory(ForkJoinPool pool, ClassifyEntriesTask.ThreadLocalFormatters formatters, UnitAppender appender) {
+        this.pool = pool;
+        this.formatters = formatters;
+        this.appender = appender;
+    }
+
+    /**
+     * Adds the entries of a commit pair to the chains of the files they touch, and starts comparing the chains that
+     * are long enough
+     */
+    public CommitUnit add(String date, List<DiffEntry> entries) throws IOException {
+        CommitUnit unit = new CommitUnit(units.size(), date, entries, 0);
+        units.add(unit);
+        Slots slots = new Slots(unit, entries.size());
+        if (entries.isEmpty()) {
+            slots.complete(appender);
+            return unit;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            DiffEntry entry = entries.get(i);
+            String path = entry.getChangeType() == DiffEntry.ChangeType.DELETE ? entry.getOldPath() : entry.getNewPath();
+            List<Version> chain = chains.get(path);
+            if (chain == null) {
+                chain = new ArrayList<Version>(4);
+                chains.put(path, chain);
+            }
+            chain.add(new Version(slots, i));
+            if (chain.size() == SEGMENT_SIZE) {
+                started.add(pool.submit(new ClassifyLawsTask(Collections.singletonList(chain), 0, 1)));
+                chains.put(path, new ArrayList<Version>(4));
+            }
+        }
+        return unit;
+    }
+
+    /**
+     * @return the number of files that changed at least once
+     */
+    public int getLawCount() {
+        return chains.size();
+    }
+
+    /**
+     * Classifies the versions of all laws that were not compared during the walk, the laws in parallel, and waits for
+     * the ones that were
+     *
+     * @return the units in the order they were added, with their changes computed unless they were handed to the
+     * appender
+     */
+    public List<CommitUnit> run() {
+        List<List<Version>> laws = new ArrayList<List<Version>>(chains.size());
+        for (List<Version> chain : chains.values()) {
+            if (!chain.isEmpty()) {
+                laws.add(chain);
+            }
+        }
+        pool.invoke(new ClassifyLawsTask(laws, 0, laws.size()));
+        for (ForkJoinTask<?> segment : started) {
+            segment.join();
+        }
+        started.clear();
+        chains.clear();
+        return units;
+    }
+
+    /**
+     * The changes of the entries of a unit, in the order of the entries, as the versions are compared
+     */
+    private static class Slots {
+        private final CommitUnit unit;
+        private final Analyze.Change[] changes;
+        private final AtomicInteger remaining;
+
+        Slots(CommitUnit unit, int size) {
+            this.unit = unit;
+            this.changes = new Analyze.Change[size];
+            this.remaining = new AtomicInteger(size);
+        }
+
+        /**
+         * Sets the change of an entry, and hands the unit its changes once all of its entries are classified
+         */
+        void set(int position, Analyze.Change change, UnitAppender appender) throws IOException {
+            // Each version is stored in its own slot, so the workers never write to the same place
+            changes[position] = change;
+            // The count also makes the slots set by other workers visible to the last one
+            if (remaining.decrementAndGet() == 0) {
+                complete(appender);
+            }
+        }
+
+        void complete(UnitAppender appender) throws IOException {
+            List<Analyze.Change> classified = new ArrayList<Analyze.Change>();
+            for (Analyze.Change change : changes) {
+                if (change != null) {
+                    classified.add(change);
+                }
+            }
+            unit.setChanges(classified);
+            if (appender != null) {
+                appender.add(unit);
+            }
+        }
+    }
+
+    /**
+     * A version of a law: the entry at a position in the entries of a commit pair
+     */
+    private static class Version {
+        final Slots slots;
+        final int position;
+
+        Version(Slots slots, int position) {
+            this.slots = slots;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Classifies the chains of a range of laws, splitting the range in halves until it is small enough
+     */
+    private class ClassifyLawsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<List<Version>> laws;
+        private final int from;
+        private final int to;
+
+        ClassifyLawsTask(List<List<Version>> laws, int from, int to) {
+            this.laws = laws;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                classifySequentially();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ClassifyLawsTask(laws, from, middle), new ClassifyLawsTask(laws, middle, to));
+        }
+
+        private void classifySequentially() {
+            MyDiffFormatter formatter = formatters.get();
+            for (int law = from; law < to; law++) {
+                // The comparisons of this chain, by the blob ids of their old and new version
+                Map<String, Analyze.Change> compared = new HashMap<String, Analyze.Change>();
+                for (Version version : laws.get(law)) {
+                    CommitUnit unit = version.slots.unit;
+                    DiffEntry entry = unit.getEntries().get(version.position);
+                    try {
+                        Analyze.Change change;
+                        String pair = entry.getChangeType() == DiffEntry.ChangeType.MODIFY
+                                ? entry.getOldId().name() + entry.getNewId().name() : null;
+                        if (pair != null && compared.containsKey(pair)) {
+                            Analyze.Change earlier = compared.get(pair);
+                            change = earlier != null ? earlier.withDate(unit.date) : null;
+                        } else {
+                            change = Analyze.classifyEntry(formatter, entry, unit.date);
+                            if (pair != null) {
+                                compared.put(pair, change);
+                            }
+                        }
+                        version.slots.set(version.position, change, appender);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Could not classify changes for " + unit.date, e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+
+/**
+ * A {@link RawText} that gives access to its contents and the offsets of its lines, so the text can be indexed without
+ * splitting it into lines again. It also keeps the hashes of its lines once they are computed, see
+ * {@link LawTextComparator}.
+ */
+public class LawText extends RawText {
+    private volatile int[] lineHashes;
+
+    public LawText(byte[] content) {
+        super(content);
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * @param line the line, counting from 0; {@link #size()} gives the end of the last line
+     * @return the offset of the first byte of the line
+     */
+    public int getLineStart(int line) {
+        // The first entry of lines is a sentinel
+        return lines.get(line + 1);
+    }
+
+    /**
+     * @return the hash of the line ignoring all whitespace, as computed by {@link RawTextComparator#WS_IGNORE_ALL}
+     */
+    public int getLineHash(int line) {
+        int[] hashes = lineHashes;
+        if (hashes == null) {
+            // Hashed in one go, as a diff hashes every line. Threads sharing a text may both do this, which is harmless
+            hashes = new int[size()];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = RawTextComparator.WS_IGNORE_ALL.hash(this, i);
+            }
+            lineHashes = hashes;
+        }
+        return hashes[line];
+    }
+
+    /**
+     * @return the approximate number of bytes the text takes up in memory
+     */
+    public long getMemorySize() {
+        // The contents, the line offsets and the line hashes
+        return content.length + 8L * size();
+    }
+}
@@ -0,0 +1,36 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.diff.SequenceComparator;
+
+/**
+ * Compares lines like {@link RawTextComparator#WS_IGNORE_ALL}, but takes the hashes of the lines of a {@link LawText}
+ * from the text itself. A version of a law usually takes part in two diffs, as the new text in one commit and as the old
+ * text the next time the law changes; with the text cached (see {@link TextCache}) its lines are only hashed once.
+ */
+public class LawTextComparator extends SequenceComparator<RawText> {
+    public static final LawTextComparator WS_IGNORE_ALL = new LawTextComparator();
+
+    private LawTextComparator() {
+    }
+
+    @Override
+    public boolean equals(RawText a, int ai, RawText b, int bi) {
+        return RawTextComparator.WS_IGNORE_ALL.equals(a, ai, b, bi);
+    }
+
+    @Override
+    public int hash(RawText seq, int ptr) {
+        if (seq instanceof LawText) {
+            return ((LawText) seq).getLineHash(ptr);
+        }
+        return RawTextComparator.WS_IGNORE_ALL.hash(seq, ptr);
+    }
+
+    @Override
+    public Edit reduceCommonStartEnd(RawText a, RawText b, Edit e) {
+        return RawTextComparator.WS_IGNORE_ALL.reduceCommonStartEnd(a, b, e);
+    }
+}
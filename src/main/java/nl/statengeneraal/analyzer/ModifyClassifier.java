@@ -0,0 +1,269 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.RawText;
+import org.jsoup.Jsoup;
+import org.tautua.markdownpapers.Markdown;
+import org.tautua.markdownpapers.parser.ParseException;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * <p>
+ * Decides whether a modified law changed normatively, i.e. whether any of its edits changes the text a reader sees
+ * and not just whitespace or markup.
+ * </p>
+ * <p>
+ * Every modification of the repository passes through here, so the common cases avoid the expensive route of
+ * rendering the Markdown and parsing the HTML: a text without any Markdown or HTML syntax, such as the empty side of an
+ * inserted or deleted line, normalises to itself without its whitespace.
+ * </p>
+ * Contents that are binary or too large to load are not compared; the blob changed, so they count as a modification.
+ */
+public class ModifyClassifier {
+    /**
+     * Characters that may make the rendered text differ from the Markdown source, apart from whitespace and '*' which
+     * the normalisation removes from both
+     */
+    private static final String MARKUP_CHARACTERS = "\\`*_{}[]()<>&!#|";
+
+    private ModifyClassifier() {
+    }
+
+    /**
+     * The possible outcomes of comparing the old and new contents of a modified law
+     */
+    public enum Outcome {
+        /**
+         * At least one edit changes the text
+         */
+        NORMATIVE,
+        /**
+         * Only whitespace or markup changed
+         */
+        NOT_NORMATIVE,
+        /**
+         * One of the contents is binary or too large to load, so the texts were not compared
+         */
+        NOT_TEXT
+    }
+
+    /**
+     * An edit of a modified law with the text a reader sees before and after it, see {@link #render}
+     */
+    public static class RenderedEdit {
+        public final Edit edit;
+        public final String before;
+        public final String after;
+
+        RenderedEdit(Edit edit, String before, String after) {
+            this.edit = edit;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    /**
+     * Classifies the result of comparing the contents of a modified entry
+     *
+     * @param comparison the texts and edits of the entry, see {@link MyDiffFormatter#compare}
+     */
+    public static Outcome classify(MyDiffFormatter.FormatResult comparison) {
+        return classify(comparison, null);
+    }
+
+    /**
+     * Classifies the result of comparing the contents of a modified entry, and collects its normative edits. Each edit
+     * is then rendered once and checked, rather than stopping at the first normative edit.
+     *
+     * @param comparison     the texts and edits of the entry, see {@link MyDiffFormatter#compare}
+     * @param normativeEdits the list to add the normative edits to in the order they appear in the law, or null; gets
+     *                       none if the texts were not diffed
+     */
+    public static Outcome classify(MyDiffFormatter.FormatResult comparison, List<RenderedEdit> normativeEdits) {
+        if (comparison.sameNormalisedText) {
+            return Outcome.NOT_NORMATIVE;
+        }
+        if (comparison.a == null || comparison.b == null) {
+            return Outcome.NOT_TEXT;
+        }
+        if (comparison.edits == null) {
+            // Not diffed, see DiffBudget
+            return differsOutsideWhitespace(comparison.a, comparison.b) ? Outcome.NORMATIVE : Outcome.NOT_NORMATIVE;
+        }
+        if (normativeEdits == null) {
+            for (Edit edit : comparison.edits) {
+                if (isNormative(comparison.a, comparison.b, edit)) {
+                    return Outcome.NORMATIVE;
+                }
+            }
+            return Outcome.NOT_NORMATIVE;
+        }
+        int before = normativeEdits.size();
+        for (Edit edit : comparison.edits) {
+            String markdownA = getString(comparison.a, edit.getBeginA(), edit.getEndA());
+            String markdownB = getString(comparison.b, edit.getBeginB(), edit.getEndB());
+            String renderedA = render(markdownA);
+            String renderedB = render(markdownB);
+            // Same test as isNormative, on the rendered texts: the plain ones normalise to their source
+            if (!strip(isPlain(markdownA) ? markdownA : renderedA).equals(strip(isPlain(markdownB) ? markdownB : renderedB))) {
+                normativeEdits.add(new RenderedEdit(edit, renderedA, renderedB));
+            }
+        }
+        return normativeEdits.size() > before ? Outcome.NORMATIVE : Outcome.NOT_NORMATIVE;
+    }
+
+    /**
+     * @return whether the edit changes the text of the law, not just whitespace or markup
+     */
+    public static boolean isNormative(RawText a, RawText b, Edit edit) {
+        return !normalise(getString(a, edit.getBeginA(), edit.getEndA()))
+                .equals(normalise(getString(b, edit.getBeginB(), edit.getEndB())));
+    }
+
+    /**
+     * Compares the texts without their whitespace and '*', in a single pass. Stricter than comparing the rendered
+     * texts: a change in other markup, such as an anchor, counts as a difference here.
+     *
+     * @return whether the texts differ in anything but whitespace and '*'
+     */
+    public static boolean differsOutsideWhitespace(LawText a, LawText b) {
+        byte[] contentA = a.getContent();
+        byte[] contentB = b.getContent();
+        int i = 0;
+        int j = 0;
+        while (true) {
+            while (i < contentA.length && isIgnored(contentA[i])) {
+                i++;
+            }
+            while (j < contentB.length && isIgnored(contentB[j])) {
+                j++;
+            }
+            if (i == contentA.length || j == contentB.length) {
+                return i != contentA.length || j != contentB.length;
+            }
+            if (contentA[i++] != contentB[j++]) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return whether the byte is whitespace or '*', which the normalisation removes
+     */
+    static boolean isIgnored(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r' || c == '*';
+    }
+
+    /**
+     * @return the lines from begin (inclusive) to end (exclusive) without their line breaks, joined together
+     */
+    static String getString(RawText text, int begin, int end) {
+        if (begin == end) {
+            return "";
+        }
+        // Decode the lines in one go rather than one string per line
+        String lines = text.getString(begin, end, true);
+        return lines.indexOf('\n') < 0 ? lines : lines.replace("\n", "");
+    }
+
+    /**
+     * Renders the Markdown and removes whitespace and '*' from the resulting text
+     */
+    public static String normalise(String markdown) {
+        // Rendering plain text would only wrap it in a paragraph, the normalisation removes its whitespace either way
+        return strip(isPlain(markdown) ? markdown : renderMarkdown(markdown));
+    }
+
+    /**
+     * Renders the Markdown to the text a reader sees, with its whitespace collapsed
+     */
+    public static String render(String markdown) {
+        if (isPlain(markdown)) {
+            return collapseWhitespace(markdown);
+        }
+        return renderMarkdown(markdown);
+    }
+
+    private static String renderMarkdown(String markdown) {
+        try {
+            StringWriter html = new StringWriter(markdown.length() + 32);
+            new Markdown().transform(new StringReader(markdown), html);
+            return Jsoup.parse(html.toString()).text();
+        } catch (ParseException e) {
+            // Use the source instead, which at worst counts a change in markup as normative
+            System.err.println("Could not render " + markdown + ": " + e.getMessage());
+            return markdown;
+        }
+    }
+
+    /**
+     * @return whether the Markdown renders to a single paragraph with the same text
+     */
+    static boolean isPlain(String markdown) {
+        int start = 0;
+        while (start < markdown.length() && Character.isWhitespace(markdown.charAt(start))) {
+            start++;
+        }
+        if (start == markdown.length()) {
+            return true;
+        }
+        // Block markers: quotes, lists and horizontal rules, or a carriage return that could start a new block
+        char first = markdown.charAt(start);
+        if (first == '-' || first == '+' || first == '=' || first == '>' || markdown.indexOf('\r') >= 0) {
+            return false;
+        }
+        if (first >= '0' && first <= '9') {
+            int end = start;
+            while (end < markdown.length() && markdown.charAt(end) >= '0' && markdown.charAt(end) <= '9') {
+                end++;
+            }
+            if (end < markdown.length() && (markdown.charAt(end) == '.' || markdown.charAt(end) == ')')) {
+                return false;
+            }
+        }
+        for (int i = start; i < markdown.length(); i++) {
+            if (MARKUP_CHARACTERS.indexOf(markdown.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String collapseWhitespace(String text) {
+        StringBuilder collapsed = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = collapsed.length() > 0;
+            } else {
+                if (space) {
+                    collapsed.append(' ');
+                    space = false;
+                }
+                collapsed.append(c);
+            }
+        }
+        return collapsed.toString();
+    }
+
+    /**
+     * Removes whitespace and '*', like the pattern [\s\*] does
+     */
+    static String strip(String text) {
+        StringBuilder stripped = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean skip = c == '*' || c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+            if (skip && stripped == null) {
+                stripped = new StringBuilder(text.length()).append(text, 0, i);
+            } else if (!skip && stripped != null) {
+                stripped.append(c);
+            }
+        }
+        return stripped == null ? text : stripped.toString();
+    }
+}
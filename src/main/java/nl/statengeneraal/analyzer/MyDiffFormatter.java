@@ -42,6 +42,7 @@
  * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+package nl.statengeneraal.analyzer;
 
 import org.eclipse.jgit.diff.*;
 import org.eclipse.jgit.diff.DiffAlgorithm.SupportedAlgorithm;
@@ -92,13 +93,17 @@ public class MyDiffFormatter {
      * Magic return indicating the content is binary.
      */
     private static final byte[] BINARY = new byte[]{};
+    /**
+     * Magic return indicating the content is too large to load.
+     */
+    private static final byte[] TOO_LARGE = new byte[]{};
     private final OutputStream out;
     private Repository db;
     private ObjectReader reader;
     private DiffConfig diffCfg;
     private int context = 3;
     private DiffAlgorithm diffAlgorithm;
-    private RawTextComparator comparator = RawTextComparator.WS_IGNORE_ALL;
+    private SequenceComparator<RawText> comparator = LawTextComparator.WS_IGNORE_ALL;
     private String oldPrefix = "a/"; //$NON-NLS-1$
 
     private String newPrefix = "b/"; //$NON-NLS-1$
@@ -111,6 +116,16 @@ public class MyDiffFormatter {
 
     private ContentSource.Pair source;
 
+    private boolean usePackDeltas;
+
+    private PackDeltaEdits packDeltaEdits;
+
+    private DiffBudget budget;
+
+    private TextCache textCache;
+
+    private FingerprintIndex fingerprints;
+
     /**
      * Create a new formatter with a default level of context.
      *
@@ -179,6 +194,88 @@ public class MyDiffFormatter {
                 ConfigConstants.CONFIG_KEY_ALGORITHM,
                 SupportedAlgorithm.HISTOGRAM));
 
+        if (packDeltaEdits != null)
+            packDeltaEdits.release();
+        packDeltaEdits = usePackDeltas ? new PackDeltaEdits(db) : null;
+    }
+
+    /**
+     * Set the algorithm that constructs difference output.
+     *
+     * @param alg the algorithm to produce text file differences.
+     */
+    public void setDiffAlgorithm(DiffAlgorithm alg) {
+        diffAlgorithm = alg;
+    }
+
+    /**
+     * Derive the edits of modified files from their pack delta where possible.
+     * <p/>
+     * When the new version of a file is stored as a delta against the old
+     * version, the delta instructions already tell which lines changed, so
+     * the diff can be skipped. Other entries are still diffed.
+     *
+     * @param on if pack deltas should be used.
+     */
+    public void setUsePackDeltas(boolean on) {
+        usePackDeltas = on;
+        if (db != null)
+            setRepository(db);
+    }
+
+    /**
+     * Limit the size of the texts {@link #compare} diffs and the time a diff
+     * may take. Texts over budget are compared without edits.
+     *
+     * @param budget the limits, or null to diff every text.
+     */
+    public void setDiffBudget(DiffBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Keep the texts {@link #compare} loads in a cache, so that a version of
+     * a file that is compared again is not loaded and hashed again.
+     *
+     * @param cache the cache, which may be shared with other formatters, or
+     *              null to load every text.
+     */
+    public void setTextCache(TextCache cache) {
+        textCache = cache;
+    }
+
+    /**
+     * Compare the fingerprints of the normalised texts of whole files before
+     * diffing them, so versions whose text did not change are not diffed.
+     *
+     * @param index the index, which may be shared with other formatters, or
+     *              null to diff every text.
+     */
+    public void setFingerprints(FingerprintIndex index) {
+        fingerprints = index;
+    }
+
+    /**
+     * Whether the text of one side of an entry is cached, so it does not
+     * need to be loaded before calling {@link #compare}.
+     *
+     * @param side  the side of the entry
+     * @param entry the entry
+     * @return true if the text is in the cache
+     */
+    public boolean isCached(DiffEntry.Side side, DiffEntry entry) {
+        AbbreviatedObjectId id = entry.getId(side);
+        return textCache != null && id != null && id.isComplete() && textCache.contains(id.toObjectId());
+    }
+
+    /**
+     * Release the internal ObjectReader state.
+     */
+    public void release() {
+        if (reader != null)
+            reader.release();
+        if (packDeltaEdits != null)
+            packDeltaEdits.release();
     }
 
     /**
@@ -393,6 +490,19 @@ public class MyDiffFormatter {
     }
 
     public FormatResult getFormatResult(DiffEntry ent) throws IOException {
+        return getFormatResult(ent, null, null);
+    }
+
+    /**
+     * Format a diff entry for which the contents may already have been loaded.
+     *
+     * @param ent  the entry to format
+     * @param aRaw the old contents as returned by {@link #load(DiffEntry.Side, DiffEntry)}, or null to load them here
+     * @param bRaw the new contents as returned by {@link #load(DiffEntry.Side, DiffEntry)}, or null to load them here
+     * @return the raw texts and file header of the entry
+     * @throws IOException the contents could not be loaded
+     */
+    public FormatResult getFormatResult(DiffEntry ent, byte[] aRaw, byte[] bRaw) throws IOException {
         final FormatResult res = new FormatResult();
         ByteArrayOutputStream buf = new ByteArrayOutputStream();
         final EditList editList;
@@ -414,20 +524,22 @@ public class MyDiffFormatter {
         } else {
             assertHaveRepository();
 
-            byte[] aRaw = open(OLD, ent);
-            byte[] bRaw = open(NEW, ent);
+            if (aRaw == null)
+                aRaw = open(OLD, ent);
+            if (bRaw == null)
+                bRaw = open(NEW, ent);
 
-            if (aRaw == BINARY || bRaw == BINARY //
-                    || RawText.isBinary(aRaw) || RawText.isBinary(bRaw)) {
+            if (!isText(aRaw) || !isText(bRaw)) {
                 formatOldNewPaths(buf, ent);
                 buf.write(encodeASCII("Binary files differ\n")); //$NON-NLS-1$
                 editList = new EditList();
                 type = PatchType.BINARY;
 
             } else {
-                res.a = new RawText(aRaw);
-                res.b = new RawText(bRaw);
-                editList = diff(res.a, res.b);
+                res.a = new LawText(aRaw);
+                res.b = new LawText(bRaw);
+                compareText(res, ent, null);
+                editList = res.edits;
                 type = PatchType.UNIFIED;
 
                 switch (ent.getChangeType()) {
@@ -448,6 +560,98 @@ public class MyDiffFormatter {
         return res;
     }
 
+    /**
+     * Compare the contents of an entry without formatting a header, for
+     * callers that only need the edits.
+     *
+     * @param ent  the entry to compare
+     * @param aRaw the old contents as returned by {@link #load(DiffEntry.Side, DiffEntry)}, or null to load them here
+     * @param bRaw the new contents as returned by {@link #load(DiffEntry.Side, DiffEntry)}, or null to load them here
+     * @return the raw texts and their edits, or a result without texts if
+     *         either side is binary or too large to load, or without edits if
+     *         the texts exceed the diff budget
+     * @throws IOException the contents could not be loaded
+     */
+    public FormatResult compare(DiffEntry ent, byte[] aRaw, byte[] bRaw) throws IOException {
+        assertHaveRepository();
+        final FormatResult res = new FormatResult();
+        if (isSameNormalisedText(ent)) {
+            // Known from an earlier comparison or run, without loading
+            res.sameNormalisedText = true;
+            return res;
+        }
+        LawText a = cachedText(OLD, ent);
+        LawText b = cachedText(NEW, ent);
+        if (a == null && aRaw == null)
+            aRaw = open(OLD, ent);
+        if (b == null && bRaw == null)
+            bRaw = open(NEW, ent);
+
+        if ((a == null && aRaw == TOO_LARGE) || (b == null && bRaw == TOO_LARGE))
+            res.tooLarge = true;
+        else if ((a != null || isText(aRaw)) && (b != null || isText(bRaw))) {
+            res.a = a != null ? a : cacheText(OLD, ent, aRaw);
+            res.b = b != null ? b : cacheText(NEW, ent, bRaw);
+            if (fingerprints != null && isComplete(ent)
+                    && fingerprints.get(ent.getOldId().toObjectId(), res.a)
+                    .equals(fingerprints.get(ent.getNewId().toObjectId(), res.b)))
+                res.sameNormalisedText = true;
+            else
+                compareText(res, ent, budget);
+        }
+        return res;
+    }
+
+    private boolean isSameNormalisedText(DiffEntry ent) {
+        return fingerprints != null && isComplete(ent)
+                && fingerprints.isSame(ent.getOldId().toObjectId(), ent.getNewId().toObjectId());
+    }
+
+    private static boolean isComplete(DiffEntry ent) {
+        return ent.getChangeType() == MODIFY && ent.getOldId().isComplete()
+                && ent.getNewId().isComplete();
+    }
+
+    private LawText cachedText(DiffEntry.Side side, DiffEntry ent) {
+        if (!isCached(side, ent))
+            return null;
+        return textCache.get(ent.getId(side).toObjectId());
+    }
+
+    private LawText cacheText(DiffEntry.Side side, DiffEntry ent, byte[] raw) {
+        LawText text = new LawText(raw);
+        AbbreviatedObjectId id = ent.getId(side);
+        if (textCache != null && id.isComplete())
+            textCache.put(id.toObjectId(), text);
+        return text;
+    }
+
+    private static boolean isText(byte[] raw) {
+        return raw != BINARY && raw != TOO_LARGE && !RawText.isBinary(raw);
+    }
+
+    private void compareText(FormatResult res, DiffEntry ent, DiffBudget budget)
+            throws IOException {
+        byte[] aRaw = res.a.getContent();
+        byte[] bRaw = res.b.getContent();
+        EditList deltaEdits = null;
+        if (packDeltaEdits != null && ent.getChangeType() == MODIFY)
+            deltaEdits = packDeltaEdits.compute(ent.getOldId(), ent.getNewId(), aRaw, bRaw);
+        if (deltaEdits != null)
+            res.edits = deltaEdits;
+        else if (budget == null)
+            res.edits = diff(res.a, res.b);
+        else if (!budget.fits(aRaw, bRaw))
+            res.exceeded = DiffBudget.Exceeded.SIZE;
+        else {
+            try {
+                res.edits = diffAlgorithm.diff(budget.startClock(comparator), res.a, res.b);
+            } catch (DiffBudget.TimeoutException tooSlow) {
+                res.exceeded = DiffBudget.Exceeded.TIME;
+            }
+        }
+    }
+
     public EditList diff(RawText a, RawText b) {
         return diffAlgorithm.diff(comparator, a, b);
     }
@@ -457,6 +661,19 @@ public class MyDiffFormatter {
             throw new IllegalStateException(JGitText.get().repositoryIsRequired);
     }
 
+    /**
+     * Load the contents of one side of an entry, so it can be formatted later, possibly on another thread.
+     *
+     * @param side  the side to load
+     * @param entry the entry to load the contents of
+     * @return the contents, or one of the magic empty, binary and too large values
+     * @throws IOException the contents could not be loaded
+     */
+    public byte[] load(DiffEntry.Side side, DiffEntry entry) throws IOException {
+        assertHaveRepository();
+        return open(side, entry);
+    }
+
     private byte[] open(DiffEntry.Side side, DiffEntry entry)
             throws IOException {
         if (entry.getMode(side) == FileMode.MISSING)
@@ -491,13 +708,13 @@ public class MyDiffFormatter {
             return ldr.getBytes(binaryFileThreshold);
 
         } catch (LargeObjectException.ExceedsLimit overLimit) {
-            return BINARY;
+            return TOO_LARGE;
 
         } catch (LargeObjectException.ExceedsByteArrayLimit overLimit) {
-            return BINARY;
+            return TOO_LARGE;
 
         } catch (LargeObjectException.OutOfMemory tooBig) {
-            return BINARY;
+            return TOO_LARGE;
 
         } catch (LargeObjectException tooBig) {
             tooBig.setObjectId(id.toObjectId());
@@ -661,8 +878,31 @@ public class MyDiffFormatter {
     protected static class FormatResult {
         FileHeader header;
 
-        RawText a;
+        LawText a;
+
+        LawText b;
+
+        /**
+         * The edits between a and b, or null if the contents were not compared
+         */
+        EditList edits;
 
-        RawText b;
+        /**
+         * The budget that was exceeded when the edits are null although a
+         * and b are not
+         */
+        DiffBudget.Exceeded exceeded;
+
+        /**
+         * Whether a and b are null because one of the contents is too large to
+         * load, rather than binary
+         */
+        boolean tooLarge;
+
+        /**
+         * Whether the whole texts normalise to the same text, in which case
+         * they were not diffed, see {@link FingerprintIndex}
+         */
+        boolean sameNormalisedText;
     }
 }
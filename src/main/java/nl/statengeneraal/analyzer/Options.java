@@ -0,0 +1,344 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * <p>
+ * The settings of an analysis run, as given on the command line. Everything has a default, so running without
+ * arguments analyses the laws-markdown repository next to this one, as before.
+ * </p>
+ * Run with <code>--help</code> for the list of options.
+ */
+public class Options {
+    /**
+     * The tag of the last commit at the time of writing (September 26 2014)
+     */
+    public static final String COMMIT_20140926 = "b9c3ad8a2888bf0135df467aace4e8839237ac16";
+    public static final File PATH_TO_GIT_REPO = new File("../wetten-tools/laws-markdown/.git/");
+    private static final int MB = 1024 * 1024;
+    /**
+     * The options that take a value
+     */
+    private static final Set<String> VALUE_OPTIONS = new HashSet<String>(Arrays.asList(
+            "--repo", "--start", "--stop", "--since", "--until", "--threads", "--prefetch-threads", "--engine",
+            "--algorithm", "--format", "--output", "--delta", "--edits", "--edit-texts", "--excerpt-length", "--articles", "--rollups", "--max-diff-size", "--diff-timeout", "--text-cache", "--date", "--time-zone", "--fingerprints", "--packed-git-limit", "--packed-git-window", "--delta-base-cache"));
+
+    /**
+     * The git directory (or a directory inside the working tree) of the Markdown law repository
+     */
+    public File repository = PATH_TO_GIT_REPO;
+    /**
+     * The commit to start walking back from. Anything git can resolve, such as HEAD or a tag
+     */
+    public String start = COMMIT_20140926;
+    /**
+     * The commit to stop at. Only the changes made after it are counted. Null to walk the entire history
+     */
+    public String stop;
+    /**
+     * The first day to count changes for, see {@link CommitDates}, or {@link CommitDates#NONE}
+     */
+    public int since = CommitDates.NONE;
+    /**
+     * The last day to count changes for, or {@link CommitDates#NONE}
+     */
+    public int until = CommitDates.NONE;
+    /**
+     * Where the date of a commit comes from
+     */
+    public CommitDates.Source dateSource = CommitDates.Source.MESSAGE;
+    /**
+     * The time zone of the days of commit times
+     */
+    public TimeZone timeZone = TimeZone.getTimeZone("Europe/Amsterdam");
+    public int threads = Runtime.getRuntime().availableProcessors();
+    public int prefetchThreads = AnalysisPipeline.DEFAULT_PREFETCH_THREADS;
+    public Analyze.Engine engine = Analyze.Engine.PIPELINE;
+    /**
+     * The diff algorithm, or null to use the one configured in the repository (histogram if not configured)
+     */
+    public DiffAlgorithm.SupportedAlgorithm algorithm;
+    public boolean usePackDeltas = false;
+    /**
+     * The combined size in bytes of the old and new version of a law above which they are not diffed
+     */
+    public long maxDiffSize = 16L * MB;
+    /**
+     * The time in milliseconds after which diffing a law is given up
+     */
+    public long diffTimeout = 10000;
+    /**
+     * The memory in bytes for keeping recently compared versions of laws, with their line hashes
+     */
+    public long textCacheSize = 64L * MB;
+    /**
+     * The file of the index of fingerprints of normalised texts, kept between runs, or null to compare the edits of
+     * every modified law
+     */
+    public File fingerprints;
+    public OutputFormat format = OutputFormat.CSV;
+    public File output = new File("result.csv");
+    /**
+     * The file to write the rows inserted into and removed from the previous result at {@link #output} to, or null to
+     * only write the result
+     */
+    public File delta;
+    /**
+     * The file to write one row per normative edit to, or null to leave out the edits
+     */
+    public File edits;
+    /**
+     * The side file to write the full before and after texts of the edits to, or null to keep excerpts
+     */
+    public File editTexts;
+    public int excerptLength = 200;
+    /**
+     * The file to write one row per normatively changed article to, or null to leave out the articles
+     */
+    public File articles;
+    /**
+     * The directory to write the counts per day, week, month and year and over rolling windows to, or null to leave
+     * them out
+     */
+    public File rollups;
+    /**
+     * Sizes of the JGit caches in bytes, or 0 to keep the JGit defaults
+     */
+    public long packedGitLimit;
+    public int packedGitWindowSize;
+    public int deltaBaseCacheLimit;
+    public boolean help;
+
+    /**
+     * Reads the options from the command line arguments
+     *
+     * @throws IllegalArgumentException if an option is unknown or its value is invalid
+     */
+    public static Options parse(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-h") || arg.equals("--help")) {
+                options.help = true;
+                continue;
+            }
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+
+            String name = arg;
+            String value = null;
+            int equals = arg.indexOf('=');
+            if (equals > 0) {
+                name = arg.substring(0, equals);
+                value = arg.substring(equals + 1);
+            }
+            if (name.equals("--pack-deltas")) {
+                options.usePackDeltas = value == null || Boolean.parseBoolean(value);
+                continue;
+            }
+            if (!VALUE_OPTIONS.contains(name)) {
+                throw new IllegalArgumentException("Unknown option: " + name);
+            }
+            if (value == null) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + name);
+                }
+                value = args[++i];
+            }
+            options.set(name, value);
+        }
+        return options;
+    }
+
+    private void set(String name, String value) {
+        if (name.equals("--repo")) {
+            repository = new File(value);
+        } else if (name.equals("--start")) {
+            start = value;
+        } else if (name.equals("--stop")) {
+            stop = value;
+        } else if (name.equals("--since")) {
+            since = date(name, value);
+        } else if (name.equals("--until")) {
+            until = date(name, value);
+        } else if (name.equals("--date")) {
+            dateSource = constant(CommitDates.Source.class, name, value);
+        } else if (name.equals("--time-zone")) {
+            timeZone = TimeZone.getTimeZone(value);
+            if (!timeZone.getID().equals(value)) {
+                throw new IllegalArgumentException("Unknown time zone for " + name + ": " + value);
+            }
+        } else if (name.equals("--threads")) {
+            threads = positive(name, value);
+        } else if (name.equals("--prefetch-threads")) {
+            prefetchThreads = positive(name, value);
+        } else if (name.equals("--engine")) {
+            engine = constant(Analyze.Engine.class, name, value);
+        } else if (name.equals("--algorithm")) {
+            algorithm = constant(DiffAlgorithm.SupportedAlgorithm.class, name, value);
+        } else if (name.equals("--max-diff-size")) {
+            maxDiffSize = (long) positive(name, value) * MB;
+        } else if (name.equals("--diff-timeout")) {
+            diffTimeout = positive(name, value);
+        } else if (name.equals("--text-cache")) {
+            textCacheSize = (long) positive(name, value) * MB;
+        } else if (name.equals("--fingerprints")) {
+            fingerprints = new File(value);
+        } else if (name.equals("--format")) {
+            format = constant(OutputFormat.class, name, value);
+        } else if (name.equals("--output")) {
+            output = new File(value);
+        } else if (name.equals("--delta")) {
+            delta = new File(value);
+        } else if (name.equals("--edits")) {
+            edits = new File(value);
+        } else if (name.equals("--edit-texts")) {
+            editTexts = new File(value);
+        } else if (name.equals("--excerpt-length")) {
+            excerptLength = positive(name, value);
+        } else if (name.equals("--articles")) {
+            articles = new File(value);
+        } else if (name.equals("--rollups")) {
+            rollups = new File(value);
+        } else if (name.equals("--packed-git-limit")) {
+            packedGitLimit = (long) positive(name, value) * MB;
+        } else if (name.equals("--packed-git-window")) {
+            packedGitWindowSize = bytes(name, value, 1024);
+        } else if (name.equals("--delta-base-cache")) {
+            deltaBaseCacheLimit = bytes(name, value, MB);
+        }
+    }
+
+    private static <T extends Enum<T>> T constant(Class<T> type, String name, String value) {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown value for " + name + ": " + value);
+        }
+    }
+
+    private static int positive(String name, String value) {
+        int number;
+        try {
+            number = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number: " + value);
+        }
+        if (number < 1) {
+            throw new IllegalArgumentException(name + " must be at least 1: " + value);
+        }
+        return number;
+    }
+
+    /**
+     * @return the size in bytes of a number of units, for the JGit settings that are an int
+     */
+    private static int bytes(String name, String value, int unit) {
+        long size = (long) positive(name, value) * unit;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(name + " must be at most " + Integer.MAX_VALUE / unit + ": " + value);
+        }
+        return (int) size;
+    }
+
+    private static int date(String name, String value) {
+        byte[] raw = value.getBytes(Charset.forName("US-ASCII"));
+        int day = Analyze.DATE_REGEX.matcher(value).matches() ? CommitDates.parse(raw, 0, raw.length) : CommitDates.NONE;
+        if (day == CommitDates.NONE) {
+            throw new IllegalArgumentException(name + " must be a date formatted YYYY-MM-DD: " + value);
+        }
+        return day;
+    }
+
+    /**
+     * @param day a day, see {@link CommitDates}, or {@link CommitDates#NONE} for a commit without a date
+     * @return whether changes on the day are counted; those without a date only if no range of dates is given
+     */
+    public boolean includes(int day) {
+        if (day == CommitDates.NONE) {
+            return since == CommitDates.NONE && until == CommitDates.NONE;
+        }
+        return (since == CommitDates.NONE || since <= day) && (until == CommitDates.NONE || day <= until);
+    }
+
+    /**
+     * Applies the cache sizes to the JGit window cache, which is shared by all repositories in this JVM
+     */
+    public void installCacheConfig() {
+        if (packedGitLimit == 0 && packedGitWindowSize == 0 && deltaBaseCacheLimit == 0) {
+            return;
+        }
+        WindowCacheConfig config = new WindowCacheConfig();
+        if (packedGitLimit > 0) {
+            config.setPackedGitLimit(packedGitLimit);
+        }
+        if (packedGitWindowSize > 0) {
+            config.setPackedGitWindowSize(packedGitWindowSize);
+        }
+        if (deltaBaseCacheLimit > 0) {
+            config.setDeltaBaseCacheLimit(deltaBaseCacheLimit);
+        }
+        config.install();
+    }
+
+    public static String usage() {
+        return "Usage: analyze [options]\n"
+                + "Counts the added, modified and deleted laws per day in the Markdown law repository.\n"
+                + "\n"
+                + "  --repo PATH               git directory of the law repository (default " + PATH_TO_GIT_REPO + ")\n"
+                + "  --start COMMIT            commit to walk back from (default " + COMMIT_20140926 + ")\n"
+                + "  --stop COMMIT             only count changes made after this commit (default: entire history)\n"
+                + "  --since YYYY-MM-DD        first date to count changes for\n"
+                + "  --until YYYY-MM-DD        last date to count changes for\n"
+                + "  --date SOURCE             message, author or committer: take the date of a commit from its message\n"
+                + "                            (YYYY-MM-DD, skipping other commits) or its author or commit time (default message)\n"
+                + "  --time-zone ID            time zone of the days of commit times (default Europe/Amsterdam)\n"
+                + "  --threads N               threads that diff and classify (default: number of cores)\n"
+                + "  --prefetch-threads N      threads that load blobs in the pipeline engine (default "
+                + AnalysisPipeline.DEFAULT_PREFETCH_THREADS + ")\n"
+                + "  --engine NAME             sequential, scheduled, pipeline or laws (default pipeline)\n"
+                + "  --algorithm NAME          histogram or myers (default: the repository's diff.algorithm)\n"
+                + "  --pack-deltas             derive edits from pack deltas where possible instead of diffing\n"
+                + "  --max-diff-size MB        compare larger laws by their lines instead of diffing them (default 16)\n"
+                + "  --diff-timeout MS         give up diffing a law after this time and compare its lines (default 10000)\n"
+                + "  --text-cache MB           memory for recently compared versions of laws and their line hashes (default 64)\n"
+                + "  --fingerprints PATH       keep a fingerprint of the normalised text of every version in PATH and only diff\n"
+                + "                            laws whose text changed\n"
+                + "  --format NAME             output format: csv, or csv-gzip to compress the tables in chunks on all threads\n"
+                + "                            and index the chunks in PATH.index (default csv)\n"
+                + "  --output PATH             file to write the results to (default result.csv)\n"
+                + "  --delta PATH              also write the rows inserted into and removed from the previous result at the\n"
+                + "                            output path to PATH\n"
+                + "  --edits PATH              also write the before and after text of every normative edit to PATH\n"
+                + "  --excerpt-length N        characters of those texts to keep (default 200)\n"
+                + "  --edit-texts PATH         write the full texts to PATH, each once, and refer to them by id\n"
+                + "  --articles PATH           also write the articles (or other headings) that changed normatively to PATH\n"
+                + "  --rollups DIR             also write the adds, modifies and deletes per day, week, month and year and over\n"
+                + "                            rolling " + Rollups.ROLLING_WINDOW + " days, for all laws, BWBR and BWBV, to tables in DIR\n"
+                + "  --packed-git-limit MB     size of the JGit pack window cache\n"
+                + "  --packed-git-window KB    size of a single pack window\n"
+                + "  --delta-base-cache MB     size of the JGit delta base cache\n"
+                + "  -h, --help                show this help\n";
+    }
+
+    /**
+     * The ways the results can be written
+     */
+    public enum OutputFormat {
+        CSV,
+        /**
+         * Gzip compressed CSV, compressed in parallel in chunks, with an index of the chunks, see {@link ChunkedGzipWriter}
+         */
+        CSV_GZIP
+    }
+}
@@ -0,0 +1,374 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.ObjectDatabase;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.IntList;
+import org.eclipse.jgit.util.RawParseUtils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * Derives the edits between two versions of a law from the pack delta that stores one version against the other,
+ * instead of diffing the two texts.
+ * </p>
+ * <p>
+ * Consecutive versions of a law are usually stored as a delta against each other, in either direction. The copy
+ * instructions of such a delta mark the bytes that stayed the same; everything in between was inserted or deleted.
+ * These byte ranges are widened to whole lines, so the result can be used like the edit list of a line diff. Unlike the whitespace
+ * ignoring diff, the edits also cover whitespace changes; it is up to the caller to check whether they matter.
+ * </p>
+ * Only deltas whose copies read the base from front to back can be translated this way. For anything else (neither
+ * version being a delta of the other, moved blocks of text, loose objects) {@link #compute} returns null and
+ * the caller should fall back to a full diff. Instances keep pack files open and are not thread-safe.
+ */
+public class PackDeltaEdits {
+    private static final int OBJ_OFS_DELTA = 6;
+    private static final int OBJ_REF_DELTA = 7;
+    /**
+     * Room for the largest object header, delta base offset and delta base id
+     */
+    private static final int MAX_HEADER_LENGTH = 64;
+
+    private final List<PackFile> packs;
+    private final Map<PackFile, RandomAccessFile> openFiles = new HashMap<PackFile, RandomAccessFile>();
+    private final byte[] header = new byte[MAX_HEADER_LENGTH];
+    private final byte[] input = new byte[8192];
+    /**
+     * Reused for every delta, and ended when released
+     */
+    private Inflater inflater;
+
+    public PackDeltaEdits(Repository repository) {
+        ObjectDatabase objects = repository.getObjectDatabase();
+        if (objects instanceof ObjectDirectory) {
+            packs = new ArrayList<PackFile>(((ObjectDirectory) objects).getPacks());
+        } else {
+            packs = Collections.emptyList();
+        }
+    }
+
+    /**
+     * Determines the edits between two versions from the delta between them
+     *
+     * @param oldId the id of the old version
+     * @param newId the id of the new version
+     * @param a     the contents of the old version
+     * @param b     the contents of the new version
+     * @return the edits, or null if they cannot be derived from a delta
+     * @throws IOException the pack could not be read
+     */
+    public EditList compute(AbbreviatedObjectId oldId, AbbreviatedObjectId newId, byte[] a, byte[] b) throws IOException {
+        if (!oldId.isComplete() || !newId.isComplete()) {
+            return null;
+        }
+        byte[] delta = findDelta(newId.toObjectId(), oldId.toObjectId());
+        if (delta != null) {
+            return toEdits(delta, a, b);
+        }
+
+        // Git usually keeps the newest version whole and stores older ones as deltas against it
+        delta = findDelta(oldId.toObjectId(), newId.toObjectId());
+        if (delta != null) {
+            EditList edits = toEdits(delta, b, a);
+            if (edits != null) {
+                for (Edit edit : edits) {
+                    edit.swap();
+                }
+            }
+            return edits;
+        }
+        return null;
+    }
+
+    /**
+     * @return the inflated delta that stores the given object, or null if it is not stored as a delta of the base
+     */
+    private byte[] findDelta(ObjectId id, ObjectId baseId) throws IOException {
+        for (PackFile pack : packs) {
+            long offset = pack.getIndex().findOffset(id);
+            if (offset >= 0) {
+                return readDeltaAgainst(pack, offset, baseId);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the inflated delta stored at the given offset, or null if the object there is not a delta of the base
+     */
+    private byte[] readDeltaAgainst(PackFile pack, long offset, ObjectId baseId) throws IOException {
+        RandomAccessFile file = open(pack);
+        file.seek(offset);
+        int length = (int) Math.min(MAX_HEADER_LENGTH, file.length() - offset);
+        if (length <= 0) {
+            return null;
+        }
+        file.readFully(header, 0, length);
+
+        int p = 0;
+        int c = header[p++] & 0xff;
+        int type = (c >> 4) & 7;
+        long size = c & 15;
+        int shift = 4;
+        while ((c & 0x80) != 0) {
+            if (p >= length) {
+                return null;
+            }
+            c = header[p++] & 0xff;
+            size += (long) (c & 0x7f) << shift;
+            shift += 7;
+        }
+
+        switch (type) {
+            case OBJ_OFS_DELTA: {
+                if (p >= length) {
+                    return null;
+                }
+                c = header[p++] & 0xff;
+                long base = c & 127;
+                while ((c & 128) != 0) {
+                    if (p >= length) {
+                        return null;
+                    }
+                    base += 1;
+                    c = header[p++] & 0xff;
+                    base <<= 7;
+                    base += (c & 127);
+                }
+                if (offset - base != pack.getIndex().findOffset(baseId)) {
+                    return null;
+                }
+                break;
+            }
+            case OBJ_REF_DELTA:
+                if (p + 20 > length || !ObjectId.fromRaw(header, p).equals(baseId)) {
+                    return null;
+                }
+                p += 20;
+                break;
+            default:
+                return null;
+        }
+        if (size > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        file.seek(offset + p);
+        return inflate(file, (int) size);
+    }
+
+    /**
+     * Inflates the data at the position of the file, without closing the file, which stays open for the next delta
+     *
+     * @return the inflated data, or null if it ends before the given size
+     */
+    private byte[] inflate(RandomAccessFile file, int size) throws IOException {
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        inflater.reset();
+        byte[] inflated = new byte[size];
+        int read = 0;
+        try {
+            while (read < inflated.length) {
+                if (inflater.needsInput()) {
+                    int n = file.read(input);
+                    if (n < 0) {
+                        return null;
+                    }
+                    inflater.setInput(input, 0, n);
+                }
+                int n = inflater.inflate(inflated, read, inflated.length - read);
+                if (n == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                    return null;
+                }
+                read += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt delta in a pack file", e);
+        }
+        return inflated;
+    }
+
+    /**
+     * Translates the instructions of a delta into line edits. Unchanged stretches are the copy instructions that
+     * continue where the previous copy left off in the base; everything between them is an edit.
+     */
+    static EditList toEdits(byte[] delta, byte[] a, byte[] b) {
+        int p = 0;
+        long baseSize = 0;
+        int shift = 0;
+        int c;
+        do {
+            c = delta[p++] & 0xff;
+            baseSize |= (long) (c & 0x7f) << shift;
+            shift += 7;
+        } while ((c & 0x80) != 0);
+        long resultSize = 0;
+        shift = 0;
+        do {
+            c = delta[p++] & 0xff;
+            resultSize |= (long) (c & 0x7f) << shift;
+            shift += 7;
+        } while ((c & 0x80) != 0);
+        if (baseSize != a.length || resultSize != b.length) {
+            return null;
+        }
+
+        LineIndex linesA = new LineIndex(a);
+        LineIndex linesB = new LineIndex(b);
+        EditList edits = new EditList();
+        int baseEnd = 0;
+        int resultEnd = 0;
+        int resultPos = 0;
+        while (p < delta.length) {
+            int cmd = delta[p++] & 0xff;
+            if ((cmd & 0x80) != 0) {
+                int copyOffset = 0;
+                if ((cmd & 0x01) != 0) copyOffset = delta[p++] & 0xff;
+                if ((cmd & 0x02) != 0) copyOffset |= (delta[p++] & 0xff) << 8;
+                if ((cmd & 0x04) != 0) copyOffset |= (delta[p++] & 0xff) << 16;
+                if ((cmd & 0x08) != 0) copyOffset |= (delta[p++] & 0xff) << 24;
+                int copySize = 0;
+                if ((cmd & 0x10) != 0) copySize = delta[p++] & 0xff;
+                if ((cmd & 0x20) != 0) copySize |= (delta[p++] & 0xff) << 8;
+                if ((cmd & 0x40) != 0) copySize |= (delta[p++] & 0xff) << 16;
+                if (copySize == 0) copySize = 0x10000;
+
+                if (copyOffset < baseEnd) {
+                    // Text was moved or repeated, which cannot be expressed as edits in order
+                    return null;
+                }
+                addEdit(edits, linesA, linesB, baseEnd, copyOffset, resultEnd, resultPos);
+                baseEnd = copyOffset + copySize;
+                resultPos += copySize;
+                resultEnd = resultPos;
+            } else if (cmd != 0) {
+                p += cmd;
+                resultPos += cmd;
+            } else {
+                // Reserved instruction
+                return null;
+            }
+        }
+        addEdit(edits, linesA, linesB, baseEnd, a.length, resultEnd, b.length);
+        return edits;
+    }
+
+    /**
+     * Adds the edit replacing bytes [startA, endA) of the old version by [startB, endB) of the new one, widened to
+     * whole lines and merged with the previous edit if they touch
+     */
+    private static void addEdit(EditList edits, LineIndex linesA, LineIndex linesB, int startA, int endA, int startB, int endB) {
+        if (startA == endA && startB == endB) {
+            return;
+        }
+        boolean endsOnLineStart = linesA.isLineStart(endA) && linesB.isLineStart(endB);
+        int beginLineA = linesA.lineOf(startA);
+        int beginLineB = linesB.lineOf(startB);
+        int endLineA = endsOnLineStart ? linesA.lineOf(endA) : linesA.lineOf(endA) + 1;
+        int endLineB = endsOnLineStart ? linesB.lineOf(endB) : linesB.lineOf(endB) + 1;
+        endLineA = Math.min(Math.max(endLineA, beginLineA), linesA.count);
+        endLineB = Math.min(Math.max(endLineB, beginLineB), linesB.count);
+
+        if (!edits.isEmpty()) {
+            Edit last = edits.get(edits.size() - 1);
+            if (beginLineA <= last.getEndA() || beginLineB <= last.getEndB()) {
+                edits.set(edits.size() - 1, new Edit(last.getBeginA(), Math.max(last.getEndA(), endLineA),
+                        last.getBeginB(), Math.max(last.getEndB(), endLineB)));
+                return;
+            }
+        }
+        edits.add(new Edit(beginLineA, endLineA, beginLineB, endLineB));
+    }
+
+    /**
+     * The line starts of a text, numbered the same way as the lines of a {@link org.eclipse.jgit.diff.RawText}
+     */
+    private static class LineIndex {
+        /**
+         * A sentinel, the start of each line and the end of the text
+         */
+        private final IntList lines;
+        private final int count;
+        private final int end;
+        private final boolean terminated;
+
+        LineIndex(byte[] content) {
+            lines = RawParseUtils.lineMap(content, 0, content.length);
+            count = lines.size() - 2;
+            end = content.length;
+            terminated = end == 0 || content[end - 1] == '\n';
+        }
+
+        /**
+         * @return the index of the line holding the given byte. The end of the text is part of the last line if that
+         * line has no line feed, otherwise it is the start of the (empty) line after it.
+         */
+        int lineOf(int offset) {
+            if (offset >= end) {
+                return terminated ? count : count - 1;
+            }
+            int low = 1;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (lines.get(middle) <= offset) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low - 1;
+        }
+
+        boolean isLineStart(int offset) {
+            if (offset >= end) {
+                return terminated;
+            }
+            return lines.get(lineOf(offset) + 1) == offset;
+        }
+    }
+
+    private RandomAccessFile open(PackFile pack) throws IOException {
+        RandomAccessFile file = openFiles.get(pack);
+        if (file == null) {
+            file = new RandomAccessFile(pack.getPackFile(), "r");
+            openFiles.put(pack, file);
+        }
+        return file;
+    }
+
+    /**
+     * Closes the pack files opened so far, and frees the memory of the inflater
+     */
+    public void release() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+        for (RandomAccessFile file : openFiles.values()) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+                // Nothing left to read from it
+            }
+        }
+        openFiles.clear();
+    }
+}
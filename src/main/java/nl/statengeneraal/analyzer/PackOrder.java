@@ -0,0 +1,55 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectDatabase;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * Finds where objects are stored in the pack files of a repository, so they can be read in the order they are
+ * stored in.
+ * </p>
+ * Reading the blobs of a commit in path order hits the packs at effectively random offsets, which thrashes the
+ * window cache. Reading them by ascending position makes the pack I/O mostly sequential.
+ */
+public class PackOrder {
+    /**
+     * Position of objects that are not in a pack (loose objects), which are read after all packed ones
+     */
+    public static final long NOT_PACKED = Long.MAX_VALUE;
+    private static final int OFFSET_BITS = 48;
+
+    private final List<PackFile> packs;
+
+    public PackOrder(Repository repository) {
+        ObjectDatabase objects = repository.getObjectDatabase();
+        if (objects instanceof ObjectDirectory) {
+            // Snapshot the packs once, looking them up for every object would stat the pack directory each time
+            packs = new ArrayList<PackFile>(((ObjectDirectory) objects).getPacks());
+        } else {
+            packs = Collections.emptyList();
+        }
+    }
+
+    /**
+     * Determines the position of an object, comparing by pack and then by offset within the pack
+     *
+     * @return the position, or {@link #NOT_PACKED} if the object is not in any of the packs
+     */
+    public long position(AnyObjectId id) throws IOException {
+        for (int i = 0; i < packs.size(); i++) {
+            long offset = packs.get(i).getIndex().findOffset(id);
+            if (offset >= 0) {
+                return ((long) i << OFFSET_BITS) | offset;
+            }
+        }
+        return NOT_PACKED;
+    }
+}
@@ -0,0 +1,245 @@
+package nl.statengeneraal.analyzer;
+
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.CsvListWriter;
+import org.supercsv.io.ICsvListReader;
+import org.supercsv.io.ICsvListWriter;
+import org.supercsv.prefs.CsvPreference;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>
+ * Compares a result table with the one of the previous run and writes the rows that were inserted or removed, so a
+ * consumer can update its copy instead of reloading the whole table. A row that changed is removed and inserted again.
+ * </p>
+ * <p>
+ * Rows are matched by their key, the date, BWB ID and type of modification, and compared by a 64 bit hash of all their
+ * cells. Rows with the same key (a law changed by two commits of the same date) are told apart by their position among
+ * each other. Both tables are ordered by date and BWB ID, so they are merged a date and law at a time, and only the
+ * rows of one date and law are kept in memory.
+ * </p>
+ * Either table may be gzip compressed, see {@link ChunkedGzipWriter}. The delta table has the columns of the result table, preceded by the column Delta, which is insert or remove.
+ */
+public final class ResultDelta {
+    public static final String INSERT = "insert";
+    public static final String REMOVE = "remove";
+    private static final int DATE = 0;
+    private static final int BWB_ID = 1;
+    private static final int TYPE = 2;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ResultDelta() {
+    }
+
+    /**
+     * @param previous the result table of the previous run, or null if there is none, so that all rows are inserted
+     * @param current  the result table of this run
+     * @param delta    the file to write the inserted and removed rows to
+     * @return the number of rows in the delta
+     * @throws NotOrderedException if a table is not ordered by date and BWB ID, as those of runs before the ordering
+     *                             are not
+     */
+    public static int write(File previous, File current, File delta) throws IOException {
+        Rows before = previous != null ? new Rows(previous) : null;
+        Rows after = new Rows(current);
+        ICsvListWriter writer = null;
+        int rows = 0;
+        try {
+            writer = new CsvListWriter(new OutputStreamWriter(new FileOutputStream(delta), "UTF-8"),
+                    CsvPreference.STANDARD_PREFERENCE);
+            List<String> header = new ArrayList<String>();
+            header.add("Delta");
+            header.addAll(after.header);
+            writer.write(header);
+
+            List<List<String>> removed = before != null ? before.nextGroup() : null;
+            List<List<String>> inserted = after.nextGroup();
+            while (removed != null || inserted != null) {
+                int order = removed == null ? 1 : inserted == null ? -1 : compareGroups(removed, inserted);
+                if (order < 0) {
+                    rows += write(writer, REMOVE, removed);
+                    removed = before.nextGroup();
+                } else if (order > 0) {
+                    rows += write(writer, INSERT, inserted);
+                    inserted = after.nextGroup();
+                } else {
+                    removeUnchanged(removed, inserted);
+                    rows += write(writer, REMOVE, removed);
+                    rows += write(writer, INSERT, inserted);
+                    removed = before.nextGroup();
+                    inserted = after.nextGroup();
+                }
+            }
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+            if (before != null) {
+                before.close();
+            }
+            after.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Leaves the rows of a date and law that are in both tables out of both
+     */
+    private static void removeUnchanged(List<List<String>> removed, List<List<String>> inserted) {
+        Map<String, List<String>> before = keyed(removed);
+        for (Map.Entry<String, List<String>> row : keyed(inserted).entrySet()) {
+            List<String> previous = before.get(row.getKey());
+            if (previous != null && hash(previous) == hash(row.getValue())) {
+                // The lists are small, a date and law has a few rows at most
+                removed.remove(find(removed, previous));
+                inserted.remove(find(inserted, row.getValue()));
+            }
+        }
+    }
+
+    private static int find(List<List<String>> rows, List<String> row) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i) == row) {
+                return i;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @return the rows of a date and law by their type and their position among the rows of that type
+     */
+    private static Map<String, List<String>> keyed(List<List<String>> group) {
+        Map<String, List<String>> keyed = new HashMap<String, List<String>>();
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (List<String> row : group) {
+            String type = row.get(TYPE);
+            Integer count = counts.get(type);
+            count = count == null ? 0 : count + 1;
+            counts.put(type, count);
+            keyed.put(type + '#' + count, row);
+        }
+        return keyed;
+    }
+
+    /**
+     * @return the FNV-1a hash of the cells; an empty cell and a missing cell hash differently
+     */
+    static long hash(List<String> row) {
+        long hash = FNV_OFFSET_BASIS;
+        for (String cell : row) {
+            if (cell == null) {
+                hash = (hash ^ 0xff) * FNV_PRIME;
+                continue;
+            }
+            for (int i = 0; i < cell.length(); i++) {
+                char c = cell.charAt(i);
+                hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+                hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            }
+            // Separates the cells, so moving a character to the next cell changes the hash
+            hash = (hash ^ 0x100) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static int compareGroups(List<List<String>> a, List<List<String>> b) {
+        return compareKeys(a.get(0), b.get(0));
+    }
+
+    private static int compareKeys(List<String> a, List<String> b) {
+        // Dates formatted YYYY-MM-DD sort the same as strings
+        int byDate = a.get(DATE).compareTo(b.get(DATE));
+        return byDate != 0 ? byDate : a.get(BWB_ID).compareTo(b.get(BWB_ID));
+    }
+
+    private static int write(ICsvListWriter writer, String delta, List<List<String>> rows) throws IOException {
+        for (List<String> row : rows) {
+            List<String> cells = new ArrayList<String>(row.size() + 1);
+            cells.add(delta);
+            cells.addAll(row);
+            writer.write(cells);
+        }
+        return rows.size();
+    }
+
+    /**
+     * Reads a result table a date and law at a time
+     */
+    private static class Rows {
+        private final File file;
+        private final ICsvListReader reader;
+        private final List<String> header;
+        private List<String> next;
+
+        Rows(File file) throws IOException {
+            this.file = file;
+            InputStream in = new FileInputStream(file);
+            if (ChunkedGzipWriter.isGzip(file)) {
+                // All chunks in one go
+                in = new GZIPInputStream(in, 64 * 1024);
+            }
+            reader = new CsvListReader(new InputStreamReader(in, "UTF-8"), CsvPreference.STANDARD_PREFERENCE);
+            String[] header = reader.getHeader(true);
+            if (header == null) {
+                throw new IOException("No header in " + file);
+            }
+            this.header = Arrays.asList(header);
+            next = reader.read();
+        }
+
+        /**
+         * @return the rows of the next date and law, or null after the last one
+         */
+        List<List<String>> nextGroup() throws IOException {
+            if (next == null) {
+                return null;
+            }
+            List<List<String>> group = new ArrayList<List<String>>();
+            List<String> first = next;
+            while (next != null && compareKeys(first, next) == 0) {
+                group.add(next);
+                next = reader.read();
+            }
+            if (next != null && compareKeys(first, next) > 0) {
+                throw new NotOrderedException(file, reader.getLineNumber());
+            }
+            return group;
+        }
+
+        void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Thrown when a table is not ordered by date and BWB ID, so it cannot be merged
+     */
+    public static class NotOrderedException extends IOException {
+        private static final long serialVersionUID = 1L;
+        private final File file;
+
+        NotOrderedException(File file, int line) {
+            super(file + " is not ordered by date and BWB ID at line " + line);
+            this.file = file;
+        }
+
+        public File getFile() {
+            return file;
+        }
+    }
+}
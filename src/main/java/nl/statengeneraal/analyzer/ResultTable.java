@@ -0,0 +1,594 @@
+package nl.statengeneraal.analyzer;
+
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.ICsvListReader;
+import org.supercsv.prefs.CsvPreference;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>
+ * A result table read back for reporting, in columns of primitives: the day (see {@link CommitDates}), law, type of
+ * modification and magnitude of every change. The before and after blobs, the type flags and the fallback are not
+ * kept.
+ * </p>
+ * <p>
+ * The file is memory-mapped and split into ranges, which are parsed in parallel. A range starts after the first line
+ * break in it, and its last row may run past its end; the cells of a result table hold no line breaks or quotes, so
+ * every line break ends a row. A table written as chunked gzip (see {@link ChunkedGzipWriter}) is read a chunk at a
+ * time, the chunks decompressed in parallel.
+ * </p>
+ * <p>
+ * The counts per type, day and law are computed over a parallel stream of the rows, on as many threads as the table was
+ * read with; {@link #rows()} is such a stream for other aggregations.
+ * </p>
+ * Tables of runs before the magnitude of modifications was measured have only the first 8 columns, up to Deletes; their
+ * magnitudes are missing.
+ */
+public class ResultTable {
+    public static final int ADD = 0;
+    public static final int MODIFY = 1;
+    public static final int DELETE = 2;
+    private static final String[] TYPES = {"add", "modify", "delete"};
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int RANGE_SIZE = 4 * 1024 * 1024;
+    /**
+     * The longest row, as far as a range may run past its end
+     */
+    private static final int MAX_ROW_LENGTH = 64 * 1024;
+    /**
+     * The columns up to Deletes, of all result tables, and those up to Fallback, of tables with magnitudes
+     */
+    private static final int COLUMNS = 8;
+    private static final int MAGNITUDE_COLUMNS = 12;
+    /**
+     * The value of a missing number
+     */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    private final int size;
+    private final int[] days;
+    /**
+     * The index of the law of each row in {@link #bwbIds}
+     */
+    private final int[] laws;
+    private final byte[] types;
+    private final int[] charactersInserted;
+    private final int[] charactersDeleted;
+    /**
+     * NaN if missing
+     */
+    private final float[] similarities;
+    /**
+     * The BWB IDs in the table, in order
+     */
+    private final String[] bwbIds;
+    /**
+     * The number of threads that count
+     */
+    private final int threads;
+
+    private ResultTable(List<Rows> parts, int threads) {
+        this.threads = threads;
+        int size = 0;
+        // The laws of all parts, in order, so the counts per law are too
+        Map<String, Integer> lawIndexes = new HashMap<String, Integer>();
+        for (Rows part : parts) {
+            size += part.size;
+            for (String bwbId : part.bwbIds) {
+                lawIndexes.put(bwbId, 0);
+            }
+        }
+        bwbIds = lawIndexes.keySet().toArray(new String[lawIndexes.size()]);
+        Arrays.sort(bwbIds);
+        for (int i = 0; i < bwbIds.length; i++) {
+            lawIndexes.put(bwbIds[i], i);
+        }
+
+        this.size = size;
+        days = new int[size];
+        laws = new int[size];
+        types = new byte[size];
+        charactersInserted = new int[size];
+        charactersDeleted = new int[size];
+        similarities = new float[size];
+        int row = 0;
+        for (Rows part : parts) {
+            System.arraycopy(part.days, 0, days, row, part.size);
+            for (int i = 0; i < part.size; i++) {
+                laws[row + i] = lawIndexes.get(part.bwbIds.get(part.laws[i]));
+            }
+            System.arraycopy(part.types, 0, types, row, part.size);
+            System.arraycopy(part.charactersInserted, 0, charactersInserted, row, part.size);
+            System.arraycopy(part.charactersDeleted, 0, charactersDeleted, row, part.size);
+            System.arraycopy(part.similarities, 0, similarities, row, part.size);
+            row += part.size;
+        }
+    }
+
+    /**
+     * Reads a result table, plain or chunked gzip
+     *
+     * @param threads the number of threads that parse
+     * @throws IOException if the file is not a result table
+     */
+    public static ResultTable read(File file, int threads) throws IOException {
+        return read(file, threads, RANGE_SIZE);
+    }
+
+    static ResultTable read(File file, int threads, int rangeSize) throws IOException {
+        ExecutorService parsers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Rows>> parts = ChunkedGzipWriter.isGzip(file) ? readGzip(file, parsers) : readMapped(file, parsers, rangeSize);
+            List<Rows> rows = new ArrayList<Rows>(parts.size());
+            for (Future<Rows> part : parts) {
+                rows.add(part.get());
+            }
+            return new ResultTable(rows, threads);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + file, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new IOException(file + ": " + e.getCause().getMessage(), e.getCause());
+            }
+            throw new IOException("Could not read " + file, e.getCause());
+        } finally {
+            parsers.shutdownNow();
+        }
+    }
+
+    private static List<Future<Rows>> readMapped(File file, ExecutorService parsers, int rangeSize) throws IOException {
+        List<Future<Rows>> parts = new ArrayList<Future<Rows>>();
+        RandomAccessFile random = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = random.getChannel();
+            long length = channel.size();
+            for (long start = 0; start == 0 || start < length; start += rangeSize) {
+                long mapStart = Math.max(0, start - 1);
+                long mapEnd = Math.min(length, start + rangeSize + MAX_ROW_LENGTH);
+                // The mapping stays valid after the channel is closed
+                final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+                final int from = (int) (start - mapStart);
+                final int to = (int) Math.min(from + rangeSize, mapEnd - mapStart);
+                final boolean last = mapEnd == length;
+                parts.add(parsers.submit(new Callable<Rows>() {
+                    @Override
+                    public Rows call() throws IOException {
+                        return Rows.parse(mapped, from, to, last, from == 0);
+                    }
+                }));
+            }
+        } finally {
+            random.close();
+        }
+        return parts;
+    }
+
+    private static List<Future<Rows>> readGzip(File file, ExecutorService parsers) throws IOException {
+        List<Future<Rows>> parts = new ArrayList<Future<Rows>>();
+        File index = ChunkedGzipWriter.indexOf(file);
+        if (!index.exists()) {
+            // A single gzip stream, which can only be decompressed in order
+            parts.add(parsers.submit(chunk(file, 0, file.length())));
+            return parts;
+        }
+        ICsvListReader reader = new CsvListReader(new InputStreamReader(new FileInputStream(index), UTF8),
+                CsvPreference.STANDARD_PREFERENCE);
+        try {
+            reader.getHeader(true);
+            for (List<String> entry = reader.read(); entry != null; entry = reader.read()) {
+                long offset;
+                long length;
+                try {
+                    offset = Long.parseLong(entry.get(0));
+                    length = Long.parseLong(entry.get(1));
+                } catch (RuntimeException e) {
+                    throw new IOException("Not a chunk at line " + reader.getLineNumber() + " of " + index, e);
+                }
+                parts.add(parsers.submit(chunk(file, offset, length)));
+            }
+        } finally {
+            reader.close();
+        }
+        return parts;
+    }
+
+    /**
+     * @return a task that decompresses and parses a chunk of whole rows
+     */
+    private static Callable<Rows> chunk(final File file, final long offset, final long length) {
+        return new Callable<Rows>() {
+            @Override
+            public Rows call() throws IOException {
+                RandomAccessFile random = new RandomAccessFile(file, "r");
+                ByteBuffer compressed;
+                try {
+                    compressed = random.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+                } finally {
+                    random.close();
+                }
+                InputStream in = new GZIPInputStream(new ByteBufferInputStream(compressed), 64 * 1024);
+                ByteArrayOutputStream text = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, 8 * length));
+                byte[] buffer = new byte[64 * 1024];
+                for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+                    text.write(buffer, 0, count);
+                }
+                in.close();
+                ByteBuffer rows = ByteBuffer.wrap(text.toByteArray());
+                // The first chunk starts with the header
+                return Rows.parse(rows, 0, rows.limit(), true, offset == 0);
+            }
+        };
+    }
+
+    /**
+     * @return the number of changes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a parallel stream of the row numbers. Like any parallel stream it runs in the common pool, unless it is
+     * started from a task in another ForkJoinPool
+     */
+    public IntStream rows() {
+        return IntStream.range(0, size).parallel();
+    }
+
+    /**
+     * @return the day of the change, see {@link CommitDates}
+     */
+    public int getDay(int row) {
+        return days[row];
+    }
+
+    public String getDate(int row) {
+        return CommitDates.format(days[row]);
+    }
+
+    public String getBwbId(int row) {
+        return bwbIds[laws[row]];
+    }
+
+    /**
+     * @return {@link #ADD}, {@link #MODIFY} or {@link #DELETE}
+     */
+    public int getType(int row) {
+        return types[row];
+    }
+
+    /**
+     * @return the number of characters inserted by a modification, or {@link #NONE}
+     */
+    public int getCharactersInserted(int row) {
+        return charactersInserted[row];
+    }
+
+    /**
+     * @return the number of characters deleted by a modification, or {@link #NONE}
+     */
+    public int getCharactersDeleted(int row) {
+        return charactersDeleted[row];
+    }
+
+    /**
+     * @return the similarity of the versions of a modification, or NaN
+     */
+    public float getSimilarity(int row) {
+        return similarities[row];
+    }
+
+    /**
+     * @return the number of adds, modifies and deletes
+     */
+    public int[] countPerType() {
+        return count(new int[size], 1)[0];
+    }
+
+    /**
+     * @return the number of adds, modifies and deletes on each date with changes, in order of date
+     */
+    public Map<String, int[]> countPerDay() {
+        if (size == 0) {
+            return new LinkedHashMap<String, int[]>();
+        }
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (int day : days) {
+            first = Math.min(first, day);
+            last = Math.max(last, day);
+        }
+        int[] keys = new int[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = days[row] - first;
+        }
+        int[][] counts = count(keys, last - first + 1);
+        Map<String, int[]> perDay = new LinkedHashMap<String, int[]>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i][ADD] + counts[i][MODIFY] + counts[i][DELETE] > 0) {
+                perDay.put(CommitDates.format(first + i), counts[i]);
+            }
+        }
+        return perDay;
+    }
+
+    /**
+     * @return the number of adds, modifies and deletes of each law, in order of BWB ID
+     */
+    public Map<String, int[]> countPerLaw() {
+        int[][] counts = count(laws, bwbIds.length);
+        Map<String, int[]> perLaw = new LinkedHashMap<String, int[]>();
+        for (int i = 0; i < counts.length; i++) {
+            perLaw.put(bwbIds[i], counts[i]);
+        }
+        return perLaw;
+    }
+
+    /**
+     * Counts the changes of each type per key in parallel; each thread counts its rows in arrays of its own, which are
+     * added up
+     *
+     * @param keys     the key of each row
+     * @param keyCount the number of keys
+     * @return the number of changes of each type, by key
+     */
+    private int[][] count(final int[] keys, final int keyCount) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // Started from a task in the pool, the stream runs in it rather than in the common pool
+            return pool.submit(new Callable<int[][]>() {
+                @Override
+                public int[][] call() {
+                    return collect(keys, keyCount);
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while counting", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not count", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private int[][] collect(final int[] keys, final int keyCount) {
+        return rows().collect(
+                new Supplier<int[][]>() {
+                    @Override
+                    public int[][] get() {
+                        return new int[keyCount][TYPES.length];
+                    }
+                },
+                new ObjIntConsumer<int[][]>() {
+                    @Override
+                    public void accept(int[][] counts, int row) {
+                        counts[keys[row]][types[row]]++;
+                    }
+                },
+                new BiConsumer<int[][], int[][]>() {
+                    @Override
+                    public void accept(int[][] counts, int[][] other) {
+                        for (int key = 0; key < keyCount; key++) {
+                            for (int type = 0; type < TYPES.length; type++) {
+                                counts[key][type] += other[key][type];
+                            }
+                        }
+                    }
+                });
+    }
+
+    /**
+     * The rows of a part of the table, with the laws numbered in the order they occur in the part
+     */
+    private static class Rows {
+        private int size;
+        private int[] days = new int[1024];
+        private int[] laws = new int[1024];
+        private byte[] types = new byte[1024];
+        private int[] charactersInserted = new int[1024];
+        private int[] charactersDeleted = new int[1024];
+        private float[] similarities = new float[1024];
+        private final List<String> bwbIds = new ArrayList<String>();
+        private final Map<String, Integer> lawIndexes = new HashMap<String, Integer>();
+
+        /**
+         * Parses the rows that start in the range. The range at the start of the buffer is at the start of a row;
+         * other ranges start after their first line break
+         *
+         * @param last   whether the buffer ends at the end of the table, so its last row does not need a line break
+         * @param header whether the range starts with the header, which is skipped
+         */
+        static Rows parse(ByteBuffer buffer, int from, int to, boolean last, boolean header) throws IOException {
+            Rows rows = new Rows();
+            int position = from;
+            if (from > 0) {
+                // The range starts right after a line break, or its first row belongs to the range before it
+                while (position < to && buffer.get(position - 1) != '\n') {
+                    position++;
+                }
+            }
+            if (header) {
+                while (position < buffer.limit() && buffer.get(position++) != '\n') {
+                    // The header is not a change
+                }
+            }
+            int[] cells = new int[2 * MAGNITUDE_COLUMNS];
+            while (position < to) {
+                int end = position;
+                while (end < buffer.limit() && buffer.get(end) != '\n') {
+                    end++;
+                }
+                if (end == buffer.limit() && !last) {
+                    throw new IOException("Row longer than " + MAX_ROW_LENGTH + " bytes");
+                }
+                rows.add(buffer, position, end > position && buffer.get(end - 1) == '\r' ? end - 1 : end, cells);
+                position = end + 1;
+            }
+            return rows;
+        }
+
+        private void add(ByteBuffer buffer, int start, int end, int[] cells) throws IOException {
+            if (end == start) {
+                return;
+            }
+            int count = split(buffer, start, end, cells);
+            if (count != COLUMNS && count < MAGNITUDE_COLUMNS) {
+                throw new IOException("Not a result row: " + text(buffer, start, end));
+            }
+            if (size == days.length) {
+                grow();
+            }
+            int day = CommitDates.parse(bytes(buffer, cells[0], cells[1]), 0, cells[1] - cells[0]);
+            if (day == CommitDates.NONE) {
+                throw new IOException("Not a date: " + text(buffer, cells[0], cells[1]));
+            }
+            days[size] = day;
+            laws[size] = law(text(buffer, cells[2], cells[3]));
+            types[size] = (byte) type(buffer, cells[4], cells[5]);
+            if (count == COLUMNS) {
+                charactersInserted[size] = NONE;
+                charactersDeleted[size] = NONE;
+                similarities[size] = Float.NaN;
+            } else {
+                charactersInserted[size] = number(buffer, cells[16], cells[17]);
+                charactersDeleted[size] = number(buffer, cells[18], cells[19]);
+                similarities[size] = cells[20] == cells[21] ? Float.NaN : Float.parseFloat(text(buffer, cells[20], cells[21]));
+            }
+            size++;
+        }
+
+        /**
+         * @return the number of cells, whose start and end are put in the array
+         */
+        private static int split(ByteBuffer buffer, int start, int end, int[] cells) throws IOException {
+            int count = 0;
+            int cellStart = start;
+            for (int i = start; i <= end; i++) {
+                if (i == end || buffer.get(i) == ',') {
+                    if (count < cells.length / 2) {
+                        cells[2 * count] = cellStart;
+                        cells[2 * count + 1] = i;
+                    }
+                    count++;
+                    cellStart = i + 1;
+                } else if (buffer.get(i) == '"') {
+                    throw new IOException("Quoted cells are not supported: " + text(buffer, start, end));
+                }
+            }
+            return count;
+        }
+
+        private int law(String bwbId) {
+            Integer index = lawIndexes.get(bwbId);
+            if (index == null) {
+                index = bwbIds.size();
+                bwbIds.add(bwbId);
+                lawIndexes.put(bwbId, index);
+            }
+            return index;
+        }
+
+        private static int type(ByteBuffer buffer, int start, int end) throws IOException {
+            String type = text(buffer, start, end);
+            for (int i = 0; i < TYPES.length; i++) {
+                if (TYPES[i].equals(type)) {
+                    return i;
+                }
+            }
+            throw new IOException("Unknown modification type: " + type);
+        }
+
+        private static int number(ByteBuffer buffer, int start, int end) throws IOException {
+            if (start == end) {
+                return NONE;
+            }
+            int number = 0;
+            boolean negative = buffer.get(start) == '-';
+            for (int i = negative ? start + 1 : start; i < end; i++) {
+                byte c = buffer.get(i);
+                if (c < '0' || c > '9') {
+                    throw new IOException("Not a number: " + text(buffer, start, end));
+                }
+                number = 10 * number + c - '0';
+            }
+            return negative ? -number : number;
+        }
+
+        private static byte[] bytes(ByteBuffer buffer, int start, int end) {
+            byte[] bytes = new byte[end - start];
+            ByteBuffer view = buffer.duplicate();
+            view.position(start);
+            view.get(bytes);
+            return bytes;
+        }
+
+        private static String text(ByteBuffer buffer, int start, int end) {
+            return new String(bytes(buffer, start, end), UTF8);
+        }
+
+        private void grow() {
+            int length = 2 * days.length;
+            days = Arrays.copyOf(days, length);
+            laws = Arrays.copyOf(laws, length);
+            types = Arrays.copyOf(types, length);
+            charactersInserted = Arrays.copyOf(charactersInserted, length);
+            charactersDeleted = Arrays.copyOf(charactersDeleted, length);
+            similarities = Arrays.copyOf(similarities, length);
+        }
+    }
+
+    /**
+     * Reads a buffer, such as a mapped range of a file
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
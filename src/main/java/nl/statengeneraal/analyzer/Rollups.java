@@ -0,0 +1,264 @@
+package nl.statengeneraal.analyzer;
+
+import org.supercsv.io.CsvListWriter;
+import org.supercsv.io.ICsvListWriter;
+import org.supercsv.prefs.CsvPreference;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Counts the adds, modifies and deletes per day, and rolls them up per week, month and year and over rolling windows of
+ * 30 days. The counts are kept for all laws and split by type of law: regulations (BWB IDs starting with BWBR) and
+ * treaties (BWBV).
+ * </p>
+ * <p>
+ * The counts are primitive arrays indexed by day, one per series (type of law and type of change). Their prefix sums
+ * give the count of any range of days by a subtraction, so every table is written in a single pass over the days, and
+ * all tables in the same pass.
+ * </p>
+ * The tables cover every day, week, month and year from the first change to the last, also those without changes. The
+ * weeks are ISO weeks, starting on Monday.
+ */
+public class Rollups {
+    public static final int ROLLING_WINDOW = 30;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String[] TYPES = {"add", "modify", "delete"};
+    /**
+     * The prefixes of the BWB IDs of the types of law; all laws are counted first
+     */
+    private static final String[] LAW_TYPES = {"", "BWBR", "BWBV"};
+    private static final int SERIES = LAW_TYPES.length * TYPES.length;
+    private static final String[] PERIODS = {"Date", "Week", "Month", "Year", "Last day"};
+    private static final String[] COLUMNS = {"Adds", "Modifies", "Deletes", "BWBR adds", "BWBR modifies",
+            "BWBR deletes", "BWBV adds", "BWBV modifies", "BWBV deletes"};
+    /**
+     * 1970-01-01 was a Thursday
+     */
+    private static final int THURSDAY = 3;
+
+    /**
+     * The day of the first element of the arrays
+     */
+    private int base;
+    private int first = Integer.MAX_VALUE;
+    private int last = Integer.MIN_VALUE;
+    /**
+     * The changes per day of each series, from {@link #base}
+     */
+    private int[][] counts = new int[SERIES][0];
+
+    /**
+     * Counts a change
+     *
+     * @param date a date YYYY-MM-DD
+     * @return false if the date is not a date, such as the message of a start commit that is not one, and the change
+     * was not counted
+     */
+    public boolean add(String date, String bwbId, String type) {
+        byte[] raw = date.getBytes(ASCII);
+        int day = CommitDates.parse(raw, 0, raw.length);
+        if (day == CommitDates.NONE) {
+            return false;
+        }
+        add(day, bwbId, typeOf(type));
+        return true;
+    }
+
+    /**
+     * Counts a change
+     *
+     * @param day  the day of the change, see {@link CommitDates}
+     * @param type 0, 1 or 2 for an add, modify or delete
+     */
+    public void add(int day, String bwbId, int type) {
+        ensure(day);
+        first = Math.min(first, day);
+        last = Math.max(last, day);
+        counts[type][day - base]++;
+        for (int lawType = 1; lawType < LAW_TYPES.length; lawType++) {
+            if (bwbId.startsWith(LAW_TYPES[lawType])) {
+                counts[lawType * TYPES.length + type][day - base]++;
+            }
+        }
+    }
+
+    private static int typeOf(String type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i].equals(type)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(type);
+    }
+
+    /**
+     * Makes room for the day in the arrays, which grow to both sides
+     */
+    private void ensure(int day) {
+        int capacity = counts[0].length;
+        if (capacity == 0) {
+            base = day;
+        } else if (day >= base && day < base + capacity) {
+            return;
+        }
+        // Grow by half again (at least a year), towards the side of the new day
+        int newBase = Math.min(base, day);
+        int newEnd = Math.max(base + capacity, day + 1);
+        int extra = Math.max(366, (newEnd - newBase) / 2);
+        if (day < base) {
+            newBase -= extra;
+        } else {
+            newEnd += extra;
+        }
+        for (int series = 0; series < SERIES; series++) {
+            int[] grown = new int[newEnd - newBase];
+            System.arraycopy(counts[series], 0, grown, base - newBase, capacity);
+            counts[series] = grown;
+        }
+        base = newBase;
+    }
+
+    /**
+     * @return the number of days from the first change to the last
+     */
+    public int getDayCount() {
+        return last == Integer.MIN_VALUE ? 0 : last - first + 1;
+    }
+
+    /**
+     * @return the number of changes in the series on the days [start, end) of the prefix sums
+     */
+    private static int sum(int[] prefixSums, int start, int end) {
+        return prefixSums[end] - prefixSums[start];
+    }
+
+    /**
+     * @return the prefix sums of each series: the number of changes before each day from the first change, up to and
+     * including the day after the last
+     */
+    int[][] prefixSums() {
+        int[][] sums = new int[SERIES][getDayCount() + 1];
+        for (int series = 0; series < SERIES; series++) {
+            for (int day = first; day <= last; day++) {
+                sums[series][day - first + 1] = sums[series][day - first] + counts[series][day - base];
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Writes the tables in one pass over the days. The writers are closed
+     */
+    public void write(Writer daily, Writer weekly, Writer monthly, Writer yearly, Writer rolling) throws IOException {
+        Writer[] writers = {daily, weekly, monthly, yearly, rolling};
+        Table[] tables = new Table[PERIODS.length];
+        try {
+            for (int i = 0; i < tables.length; i++) {
+                tables[i] = new Table(writers[i], PERIODS[i]);
+            }
+            if (getDayCount() > 0) {
+                int[][] sums = prefixSums();
+                int week = first;
+                int month = first;
+                int year = first;
+                for (int day = first; day <= last; day++) {
+                    String date = CommitDates.format(day);
+                    String next = CommitDates.format(day + 1);
+                    boolean end = day == last;
+                    tables[0].write(date, sums, day - first, day + 1 - first);
+                    if (end || isMonday(day + 1)) {
+                        tables[1].write(isoWeek(day), sums, week - first, day + 1 - first);
+                        week = day + 1;
+                    }
+                    if (end || !next.regionMatches(0, date, 0, "YYYY-MM".length())) {
+                        tables[2].write(date.substring(0, "YYYY-MM".length()), sums, month - first, day + 1 - first);
+                        month = day + 1;
+                    }
+                    if (end || !next.regionMatches(0, date, 0, "YYYY".length())) {
+                        tables[3].write(date.substring(0, "YYYY".length()), sums, year - first, day + 1 - first);
+                        year = day + 1;
+                    }
+                    // Shorter at the start of the history
+                    tables[4].write(date, sums, Math.max(0, day + 1 - ROLLING_WINDOW - first), day + 1 - first);
+                }
+            }
+        } finally {
+            close(writers, tables);
+        }
+    }
+
+    /**
+     * Closes all writers, also when one of them fails, or a table could not be started
+     */
+    private static void close(Writer[] writers, Table[] tables) throws IOException {
+        IOException failure = null;
+        for (int i = 0; i < writers.length; i++) {
+            try {
+                if (tables[i] != null) {
+                    tables[i].close();
+                } else {
+                    writers[i].close();
+                }
+            } catch (IOException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static boolean isMonday(int day) {
+        return Math.floorMod(day + THURSDAY, 7) == 0;
+    }
+
+    /**
+     * @return the ISO week of a day, such as 2014-W03; the week belongs to the year its Thursday is in
+     */
+    static String isoWeek(int day) {
+        int thursday = day - Math.floorMod(day + THURSDAY, 7) + THURSDAY;
+        int year = Integer.parseInt(CommitDates.format(thursday).substring(0, "YYYY".length()));
+        int week = (thursday - CommitDates.toDay(year, 1, 1)) / 7 + 1;
+        // By hand, as the digits of String.format depend on the default locale
+        StringBuilder isoWeek = new StringBuilder("0000").append(year);
+        isoWeek.delete(0, isoWeek.length() - "YYYY".length()).append("-W");
+        return isoWeek.append(week < 10 ? "0" : "").append(week).toString();
+    }
+
+    /**
+     * A table of counts per period
+     */
+    private static class Table {
+        private final ICsvListWriter writer;
+        private final List<Object> row = new ArrayList<Object>(1 + SERIES);
+
+        Table(Writer writer, String period) throws IOException {
+            this.writer = new CsvListWriter(writer, CsvPreference.STANDARD_PREFERENCE);
+            List<String> header = new ArrayList<String>(Arrays.asList(period));
+            header.addAll(Arrays.asList(COLUMNS));
+            this.writer.write(header);
+        }
+
+        /**
+         * Writes the counts of the days [start, end) of the prefix sums
+         */
+        void write(String period, int[][] sums, int start, int end) throws IOException {
+            row.clear();
+            row.add(period);
+            for (int[] series : sums) {
+                row.add(sum(series, start, end));
+            }
+            writer.write(row);
+        }
+
+        void close() throws IOException {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * The most recently compared versions of the laws, by blob id, with their line offsets and line hashes. The walk goes
+ * back in time, so the old version of a law in one commit is the new version the next time the law changes; when it
+ * is still cached, it is neither loaded, split into lines nor hashed again.
+ * </p>
+ * The cache is limited by the memory the texts take up and shared by all threads.
+ */
+public class TextCache {
+    private final long maxSize;
+    private final LinkedHashMap<ObjectId, LawText> texts = new LinkedHashMap<ObjectId, LawText>(1024, 0.75f, true);
+    private long size;
+
+    /**
+     * @param maxSize the number of bytes the cached texts may take up
+     */
+    public TextCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the cached text of the blob, or null
+     */
+    public synchronized LawText get(AnyObjectId id) {
+        return texts.get(id);
+    }
+
+    public synchronized boolean contains(AnyObjectId id) {
+        return texts.containsKey(id);
+    }
+
+    /**
+     * Caches the text of a blob, evicting the least recently used texts when the cache is full
+     */
+    public synchronized void put(AnyObjectId id, LawText text) {
+        long textSize = text.getMemorySize();
+        if (textSize > maxSize / 4) {
+            // Would push out many other texts for a single reuse
+            return;
+        }
+        LawText previous = texts.put(id.copy(), text);
+        if (previous != null) {
+            size -= previous.getMemorySize();
+        }
+        size += textSize;
+        Iterator<Map.Entry<ObjectId, LawText>> eldest = texts.entrySet().iterator();
+        while (size > maxSize && eldest.hasNext()) {
+            size -= eldest.next().getValue().getMemorySize();
+            eldest.remove();
+        }
+    }
+}
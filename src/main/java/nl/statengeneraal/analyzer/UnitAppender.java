@@ -0,0 +1,50 @@
+package nl.statengeneraal.analyzer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Appends the changes of commit units to a {@link ChangeStore} while an engine is still classifying, and releases them
+ * from the units, so the heap only holds the changes of the units in progress.
+ * </p>
+ * The units are appended in the order of the walk: a unit that is classified before an earlier one waits for it. The
+ * store thus gets the changes in the same order with every engine and number of threads, and the sort keeps that order
+ * for changes of the same date and law.
+ */
+public class UnitAppender {
+    private final ChangeStore store;
+    private final Map<Integer, CommitUnit> waiting = new HashMap<Integer, CommitUnit>();
+    private int next;
+
+    public UnitAppender(ChangeStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Appends the changes of the classified unit, and of the units after it that were waiting for it
+     */
+    public synchronized void add(CommitUnit unit) throws IOException {
+        waiting.put(unit.index, unit);
+        for (CommitUnit ready = waiting.remove(next); ready != null; ready = waiting.remove(next)) {
+            store.appendAll(ready.getChanges());
+            ready.release();
+            next++;
+        }
+    }
+
+    /**
+     * @return the number of units appended, which all came before the ones still waiting
+     */
+    public synchronized int getAppended() {
+        return next;
+    }
+
+    /**
+     * @return the number of classified units waiting for an earlier unit
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+}
@@ -0,0 +1,181 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AnalysisPipelineTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void storesTheChangesOfEachCommitInTheOrderOfTheWalk() throws Exception {
+        LawRepository repository = new LawRepository(folder.newFolder());
+        // Commits of different sizes, so that batches hold parts of several commits
+        List<RevCommit> commits = new ArrayList<RevCommit>();
+        for (int day = 1; day <= 6; day++) {
+            for (int i = 0; i < 50 * day; i += day) {
+                if (i % 4 == 0) {
+                    // Only whitespace, which is not a normative change
+                    repository.write(path(i), day % 2 == 0 ? LawRepository.LAW.replace("Deze wet", "Deze  wet") : LawRepository.LAW);
+                } else {
+                    repository.write(path(i), LawRepository.LAW.replace("iedereen", "dag " + day));
+                }
+            }
+            commits.add(repository.commit("2014-01-0" + day));
+        }
+
+        ClassifyEntriesTask.ThreadLocalFormatters formatters =
+                new ClassifyEntriesTask.ThreadLocalFormatters(repository.getRepository(), new Options());
+        MyDiffFormatter formatter = formatters.get();
+        ObjectReader reader = repository.getRepository().newObjectReader();
+        ChangeStore store = new ChangeStore();
+        AnalysisPipeline pipeline = new AnalysisPipeline(formatters, new UnitAppender(store), 3, 2);
+        List<Analyze.Change> expected = new ArrayList<Analyze.Change>();
+        int entryCount = 0;
+        RevCommit previous = null;
+        for (RevCommit commit : commits) {
+            List<DiffEntry> entries = formatter.scan(previous != null ? repository.treeOf(previous, reader) : LawRepository.emptyTree(),
+                    repository.treeOf(commit, reader));
+            entryCount += entries.size();
+            for (DiffEntry entry : entries) {
+                Analyze.Change change = Analyze.classifyEntry(formatter, entry, commit.getFullMessage());
+                if (change != null) {
+                    expected.add(change);
+                }
+            }
+            pipeline.submit(commit.getFullMessage(), entries);
+            previous = commit;
+        }
+        pipeline.submit("2014-01-07", Collections.<DiffEntry>emptyList());
+
+        List<CommitUnit> units = pipeline.finish();
+        assertEquals(commits.size() + 1, units.size());
+        for (CommitUnit unit : units) {
+            // Neither the entries nor the changes are kept once stored
+            assertNull(unit.getEntries());
+            assertNull(unit.getChanges());
+        }
+        List<Analyze.Change> stored = new ArrayList<Analyze.Change>();
+        for (Analyze.Change change : store) {
+            stored.add(change);
+        }
+        assertEquals(describe(expected), describe(stored));
+        assertTrue(stored.size() < entryCount);
+        store.close();
+
+        reader.release();
+        formatters.release();
+        repository.close();
+    }
+
+    @Test
+    public void stopsTheWalkAtTheFirstFailure() throws Exception {
+        LawRepository repository = new LawRepository(folder.newFolder());
+        for (int i = 0; i < 100; i++) {
+            repository.write(path(i), LawRepository.LAW);
+        }
+        RevCommit added = repository.commit("2014-01-01");
+        for (int i = 0; i < 100; i++) {
+            repository.write(path(i), LawRepository.LAW.replace("iedereen", "niemand"));
+        }
+        RevCommit modified = repository.commit("2014-01-02");
+        ClassifyEntriesTask.ThreadLocalFormatters formatters =
+                new ClassifyEntriesTask.ThreadLocalFormatters(repository.getRepository(), new Options());
+        ObjectReader reader = repository.getRepository().newObjectReader();
+        List<DiffEntry> entries = formatters.get().scan(repository.treeOf(added, reader), repository.treeOf(modified, reader));
+
+        // The blobs of the entries are not in this repository
+        LawRepository other = new LawRepository(folder.newFolder());
+        ClassifyEntriesTask.ThreadLocalFormatters otherFormatters =
+                new ClassifyEntriesTask.ThreadLocalFormatters(other.getRepository(), new Options());
+        AnalysisPipeline pipeline = new AnalysisPipeline(otherFormatters, null, 2, 2);
+        pipeline.submit("2014-01-02", entries);
+        try {
+            // Long before the walk would end
+            for (int i = 0; i < 1000; i++) {
+                pipeline.submit("2014-01-03", Collections.<DiffEntry>emptyList());
+                Thread.sleep(10);
+            }
+            fail("Kept taking commits after a failure");
+        } catch (IllegalStateException e) {
+            assertEquals("Could not classify all changes", e.getMessage());
+        }
+
+        reader.release();
+        formatters.release();
+        otherFormatters.release();
+        other.close();
+        repository.close();
+    }
+
+    @Test(timeout = 60000)
+    public void stopsTheWalkAtAnErrorInAWorker() throws Exception {
+        LawRepository repository = new LawRepository(folder.newFolder());
+        for (int i = 0; i < 100; i++) {
+            repository.write(path(i), LawRepository.LAW);
+        }
+        RevCommit added = repository.commit("2014-01-01");
+        for (int i = 0; i < 100; i++) {
+            repository.write(path(i), LawRepository.LAW.replace("iedereen", "niemand"));
+        }
+        RevCommit modified = repository.commit("2014-01-02");
+        ClassifyEntriesTask.ThreadLocalFormatters formatters =
+                new ClassifyEntriesTask.ThreadLocalFormatters(repository.getRepository(), new Options()) {
+                    @Override
+                    protected MyDiffFormatter initialValue() {
+                        MyDiffFormatter formatter = new MyDiffFormatter(System.out) {
+                            @Override
+                            public byte[] load(DiffEntry.Side side, DiffEntry entry) {
+                                throw new OutOfMemoryError("No room for " + entry.getNewPath());
+                            }
+                        };
+                        formatter.setRepository(getRepository());
+                        return formatter;
+                    }
+                };
+        ObjectReader reader = repository.getRepository().newObjectReader();
+        List<DiffEntry> entries = formatters.get().scan(repository.treeOf(added, reader), repository.treeOf(modified, reader));
+
+        // More batches than the queues hold, so the walk would wait for the workers if they were gone
+        AnalysisPipeline pipeline = new AnalysisPipeline(formatters, null, 1, 1);
+        try {
+            for (int i = 0; i < 100; i++) {
+                pipeline.submit("2014-01-02", entries);
+            }
+            pipeline.finish();
+            fail("Finished after an error");
+        } catch (IllegalStateException e) {
+            assertEquals("Could not classify all changes", e.getMessage());
+            assertTrue(e.getCause() instanceof OutOfMemoryError);
+        }
+
+        reader.release();
+        formatters.release();
+        repository.close();
+    }
+
+    private static String describe(List<Analyze.Change> changes) {
+        List<String> descriptions = new ArrayList<String>();
+        for (Analyze.Change change : changes) {
+            descriptions.add(change.date + " " + change.bwbId + " " + change.type);
+        }
+        return descriptions.toString();
+    }
+
+    private static String path(int law) {
+        return String.format("BWBR%07d/README.md", law);
+    }
+}
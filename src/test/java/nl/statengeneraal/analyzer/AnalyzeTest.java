@@ -0,0 +1,82 @@
+package nl.statengeneraal.analyzer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the analysis on a small law repository, with every engine
+ */
+public class AnalyzeTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String LAW = LawRepository.LAW;
+
+    @Test
+    public void recordsNormativeModifications() throws Exception {
+        File repository = createRepository();
+        for (Analyze.Engine engine : Analyze.Engine.values()) {
+            Options options = new Options();
+            options.repository = new File(repository, ".git");
+            options.start = "HEAD";
+            options.engine = engine;
+            ChangeStore changes = Analyze.analyze(options);
+            Map<String, List<Analyze.Change>> changesForDate = groupByDate(changes);
+            changes.close();
+
+            assertEquals(engine + " on 2014-01-01", "[BWBR0000001 add, BWBR0000002 add, BWBR0000003 add]",
+                    describe(changesForDate.get("2014-01-01")));
+            // Only the first law changed its text, the second only its whitespace and markup
+            assertEquals(engine + " on 2014-01-02", "[BWBR0000001 modify]", describe(changesForDate.get("2014-01-02")));
+            assertEquals(engine + " on 2014-01-03", "[BWBR0000002 delete, BWBR0000003 modify]",
+                    describe(changesForDate.get("2014-01-03")));
+        }
+    }
+
+    private File createRepository() throws Exception {
+        LawRepository repository = new LawRepository(folder.newFolder());
+        repository.write("BWBR0000001/README.md", LAW);
+        repository.write("BWBR0000002/README.md", LAW);
+        repository.write("BWBR0000003/README.md", LAW);
+        repository.commit("2014-01-01");
+
+        repository.write("BWBR0000001/README.md", LAW.replace("iedereen", "niemand"));
+        repository.write("BWBR0000002/README.md", LAW.replace("Deze wet geldt", "Deze  wet *geldt*").replace("\n\n## Artikel 2", "\n\n\n## Artikel 2"));
+        repository.commit("2014-01-02");
+
+        repository.remove("BWBR0000002/README.md");
+        // A binary file is not compared, but still counts as a modification
+        repository.write("BWBR0000003/README.md", LAW.replace("iedereen", "iedereen\0"));
+        repository.commit("2014-01-03");
+        repository.close();
+        return repository.directory;
+    }
+
+    private static Map<String, List<Analyze.Change>> groupByDate(ChangeStore changes) {
+        Map<String, List<Analyze.Change>> changesForDate = new HashMap<String, List<Analyze.Change>>();
+        for (Analyze.Change change : changes) {
+            if (!changesForDate.containsKey(change.date)) {
+                changesForDate.put(change.date, new ArrayList<Analyze.Change>());
+            }
+            changesForDate.get(change.date).add(change);
+        }
+        return changesForDate;
+    }
+
+    private static String describe(List<Analyze.Change> changes) {
+        List<String> descriptions = new ArrayList<String>();
+        for (Analyze.Change change : changes) {
+            descriptions.add(change.bwbId + " " + change.type);
+        }
+        return descriptions.toString();
+    }
+}
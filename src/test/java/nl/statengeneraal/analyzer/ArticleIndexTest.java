@@ -0,0 +1,47 @@
+package nl.statengeneraal.analyzer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ArticleIndexTest {
+    private static final ArticleIndex INDEX = ArticleIndex.build(new LawText((""
+            + "Geldend van 1 januari 2014\n" // 0
+            + "# Hoofdstuk 1\n"              // 1
+            + "\n"                           // 2
+            + "## Artikel 1\n"               // 3
+            + "Deze wet geldt.\n"            // 4
+            + "## Artikel 2\n"               // 5
+            + "Zie artikel 1.").getBytes()));// 6
+
+    @Test
+    public void findsTheHeadingOfALine() {
+        assertEquals(ArticleIndex.PREAMBLE, INDEX.headingOf(0));
+        assertEquals("Hoofdstuk 1", INDEX.headingOf(2));
+        assertEquals("Artikel 1", INDEX.headingOf(3));
+        assertEquals("Artikel 1", INDEX.headingOf(4));
+        assertEquals("Artikel 2", INDEX.headingOf(6));
+    }
+
+    @Test
+    public void addsEveryHeadingOfARange() {
+        List<String> headings = new ArrayList<String>();
+        INDEX.addHeadings(0, 4, headings);
+        assertEquals("[, Hoofdstuk 1, Artikel 1]", headings.toString());
+
+        headings.clear();
+        INDEX.addHeadings(6, 6, headings);
+        assertEquals("[Artikel 2]", headings.toString());
+    }
+
+    @Test
+    public void leavesOutTheClosingHashesOfAHeading() {
+        ArticleIndex index = ArticleIndex.build(new LawText("## Artikel 1 ##  \n# Artikel C#\n#\n".getBytes()));
+        assertEquals("Artikel 1", index.headingOf(0));
+        assertEquals("Artikel C#", index.headingOf(1));
+        assertEquals("", index.headingOf(2));
+    }
+}
@@ -0,0 +1,57 @@
+package nl.statengeneraal.analyzer;
+
+import org.junit.Test;
+
+import java.util.regex.Matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class BwbIdsTest {
+    private static final String[] PATHS = {
+            "BWBR0001840/README.md",
+            "laws/BWBR0001840/README.md",
+            "BWBR0001840/BWBV0002000/README.md",
+            "laws\\BWBV0002000\\README.md",
+            "BWBR0001840/sub/README.md",
+            "README.md",
+            "BWBR0001840",
+            "BWB/README.md",
+            "BWBR^1/README.md",
+            "index.json",
+            "/BWBR0001840/",
+    };
+
+    @Test
+    public void findsTheSameIdsAsTheRegex() {
+        for (String path : PATHS) {
+            Matcher m = Analyze.BWB_FILE_REGEX.matcher(path);
+            assertEquals(path, m.find() ? m.group(2) : null, BwbIds.find(path));
+        }
+    }
+
+    @Test
+    public void internsIds() {
+        String id = BwbIds.find("BWBR0001840/README.md");
+        assertSame(id, BwbIds.find(new String("BWBR0001840/README.md")));
+        // Enough ids to grow the table
+        for (int i = 0; i < 10000; i++) {
+            assertEquals("BWBR" + i, BwbIds.find("BWBR" + i + "/README.md"));
+        }
+        assertSame(id, BwbIds.find("laws/BWBR0001840/README.md"));
+    }
+
+    @Test
+    public void sharesTheIdsBetweenThreads() throws Exception {
+        final String[] found = new String[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                found[0] = BwbIds.find("BWBR0002000/README.md");
+            }
+        };
+        thread.start();
+        thread.join();
+        assertSame(found[0], BwbIds.find(new String("BWBR0002000/README.md")));
+    }
+}
@@ -0,0 +1,46 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeMagnitudeTest {
+    @Test
+    public void countsOnlyTheCharactersThatDiffer() {
+        LawText a = new LawText("## Artikel 1\n\nDeze wet geldt voor *iedereen*.\n".getBytes());
+        LawText b = new LawText("## Artikel 1\n\nDeze  wet geldt voor iedereen!\n".getBytes());
+        ChangeMagnitude magnitude = ChangeMagnitude.of(a, b, diff(a, b));
+
+        assertEquals(1, magnitude.inserted);
+        assertEquals(1, magnitude.deleted);
+        // 35 characters other than whitespace and '*' on each side
+        assertEquals(1 - 2.0 / 70, magnitude.similarity, 1e-9);
+    }
+
+    @Test
+    public void estimatesTheSimilarityOfLargeTexts() {
+        StringBuilder a = new StringBuilder();
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            a.append("Artikel ").append(i).append('\n');
+            // Three quarters of the lines stay the same
+            b.append(i % 4 == 0 ? "Vervallen " : "Artikel ").append(i).append('\n');
+        }
+        ChangeMagnitude same = ChangeMagnitude.estimate(new LawText(a.toString().getBytes()), new LawText(a.toString().getBytes()));
+        assertEquals(1.0, same.similarity, 0);
+        assertEquals(0, same.inserted);
+
+        // 7500 shared lines of 12500 distinct ones
+        ChangeMagnitude estimate = ChangeMagnitude.estimate(new LawText(a.toString().getBytes()), new LawText(b.toString().getBytes()));
+        assertTrue(estimate.estimated);
+        assertEquals(0.6, estimate.similarity, 0.1);
+    }
+
+    private static EditList diff(LawText a, LawText b) {
+        return DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.HISTOGRAM).diff(RawTextComparator.WS_IGNORE_ALL, a, b);
+    }
+}
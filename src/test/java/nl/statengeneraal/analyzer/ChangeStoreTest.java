@@ -0,0 +1,112 @@
+package nl.statengeneraal.analyzer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChangeStoreTest {
+    @Test
+    public void readsBackTheChangesInOrder() throws Exception {
+        // Small chunks, so records span them
+        ChangeStore store = new ChangeStore(100);
+        List<Analyze.Change> changes = new ArrayList<Analyze.Change>();
+        for (int i = 0; i < 50; i++) {
+            Analyze.Change change = new Analyze.Change("2014-01-0" + (i % 9 + 1), "BWBR000000" + i, i % 3 == 0 ? "add" : "modify", null, null);
+            if (i % 3 != 0) {
+                change.charactersInserted = i;
+                change.charactersDeleted = 2 * i;
+                change.similarity = 1.0 / (i + 1);
+                change.fallback = i % 2 == 0 ? "time" : null;
+                change.edits = Arrays.asList(new Analyze.EditChange(change.date, change.bwbId, i, "voor iedereen", "voor niemand …"));
+                change.articles = Arrays.asList(new Analyze.ArticleChange(change.date, change.bwbId, "Artikel " + i),
+                        new Analyze.ArticleChange(change.date, change.bwbId, ArticleIndex.PREAMBLE));
+            }
+            changes.add(change);
+            store.append(change);
+        }
+
+        assertEquals(50, store.size());
+        Iterator<Analyze.Change> stored = store.iterator();
+        for (Analyze.Change change : changes) {
+            Analyze.Change read = stored.next();
+            assertEquals(change.date, read.date);
+            assertEquals(change.bwbId, read.bwbId);
+            assertEquals(change.type, read.type);
+            assertEquals(change.isModify, read.isModify);
+            assertEquals(change.charactersInserted, read.charactersInserted);
+            assertEquals(change.charactersDeleted, read.charactersDeleted);
+            assertEquals(change.similarity, read.similarity);
+            assertEquals(change.fallback, read.fallback);
+            if (change.edits == null) {
+                assertNull(read.edits);
+                assertNull(read.articles);
+            } else {
+                assertEquals(change.edits.get(0).line, read.edits.get(0).line);
+                assertEquals(change.edits.get(0).after, read.edits.get(0).after);
+                assertEquals(change.bwbId, read.edits.get(0).bwbId);
+                assertEquals(2, read.articles.size());
+                assertEquals(change.articles.get(0).article, read.articles.get(0).article);
+                assertEquals(ArticleIndex.PREAMBLE, read.articles.get(1).article);
+            }
+        }
+        assertFalse(stored.hasNext());
+        store.close();
+    }
+
+    @Test
+    public void sortsByDateAndBwbIdInRuns() throws Exception {
+        ChangeStore store = new ChangeStore(100);
+        // In the order of the walk: the most recent dates first
+        for (int day = 9; day >= 1; day--) {
+            for (int law = 0; law < 10; law++) {
+                store.append(new Analyze.Change("2014-01-0" + day, "BWBR000000" + (7 * law % 10), "add", null, null));
+                if (law == 3) {
+                    // The same law and day twice, in the order of the walk
+                    store.append(new Analyze.Change("2014-01-0" + day, "BWBR0000001", "delete", null, null));
+                }
+            }
+        }
+
+        // Runs of 7 changes, so equal changes end up in different runs
+        ChangeStore sorted = store.sort(7);
+        store.close();
+        assertEquals(99, sorted.size());
+        Analyze.Change previous = null;
+        for (Analyze.Change change : sorted) {
+            if (previous != null) {
+                assertTrue(ChangeStore.BY_DATE_AND_BWB_ID.compare(previous, change) <= 0);
+                if (ChangeStore.BY_DATE_AND_BWB_ID.compare(previous, change) == 0) {
+                    assertEquals("add", previous.type);
+                    assertEquals("delete", change.type);
+                }
+            }
+            previous = change;
+        }
+        sorted.close();
+    }
+
+    @Test
+    public void cannotBeReadOnceClosed() throws Exception {
+        ChangeStore store = new ChangeStore(100);
+        store.append(new Analyze.Change("2014-01-01", "BWBR0000001", "add", null, null));
+        Iterator<Analyze.Change> changes = store.iterator();
+        store.close();
+        // The chunks are unmapped, so reading them must not get that far
+        try {
+            changes.next();
+            fail("Read a closed store");
+        } catch (IllegalStateException e) {
+            assertEquals("The store is closed", e.getMessage());
+        }
+        store.close();
+    }
+}
@@ -0,0 +1,97 @@
+package nl.statengeneraal.analyzer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkedGzipWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesAGzipFileOfIndexedChunksOfWholeRows() throws Exception {
+        StringBuilder table = new StringBuilder("Date,BWB ID,Before\r\n");
+        for (int i = 0; i < 1000; i++) {
+            // A line break in a quoted cell does not end the row
+            table.append("2014-01-01,BWBR").append(i).append(i % 7 == 0 ? ",\"Artikel\r\n\"\"1\"\"\"\r\n" : ",\r\n");
+        }
+        File file = folder.newFile();
+        Writer writer = new ChunkedGzipWriter(file, 3, 100);
+        // In pieces that do not line up with the rows
+        for (int i = 0; i < table.length(); i += 33) {
+            writer.write(table.substring(i, Math.min(table.length(), i + 33)));
+        }
+        writer.close();
+
+        assertTrue(ChunkedGzipWriter.isGzip(file));
+        assertEquals(table.toString(), new String(read(new GZIPInputStream(new FileInputStream(file))), "UTF-8"));
+
+        byte[] compressed = Files.readAllBytes(file.toPath());
+        List<String> index = Files.readAllLines(ChunkedGzipWriter.indexOf(file).toPath());
+        assertEquals("Offset,Length,Text offset,Text length,Rows", index.get(0));
+        assertTrue(index.size() > 10);
+        int rows = 0;
+        long textOffset = 0;
+        for (String entry : index.subList(1, index.size())) {
+            List<String> cells = Arrays.asList(entry.split(","));
+            int offset = Integer.parseInt(cells.get(0));
+            int length = Integer.parseInt(cells.get(1));
+            String chunk = new String(read(new GZIPInputStream(new ByteArrayInputStream(compressed, offset, length))), "UTF-8");
+            assertEquals(textOffset, Long.parseLong(cells.get(2)));
+            assertEquals(chunk.length(), Integer.parseInt(cells.get(3)));
+            assertTrue(table.toString().startsWith(chunk, (int) textOffset));
+            assertTrue(chunk.endsWith(",\r\n") || chunk.endsWith("\"\r\n"));
+            rows += Integer.parseInt(cells.get(4));
+            textOffset += chunk.length();
+        }
+        assertEquals(1001, rows);
+        assertEquals(table.length(), textOffset);
+    }
+
+    @Test
+    public void leavesSharedCompressorsToTheOtherWriters() throws Exception {
+        ExecutorService compressors = ChunkedGzipWriter.newCompressors(2);
+        try {
+            File first = folder.newFile();
+            File second = folder.newFile();
+            Writer writer = new ChunkedGzipWriter(first, compressors, 2);
+            Writer other = new ChunkedGzipWriter(second, compressors, 2);
+            writer.write("Date\r\n2014-01-01\r\n");
+            writer.close();
+            assertFalse(compressors.isShutdown());
+            other.write("Date\r\n2014-01-02\r\n");
+            other.close();
+            assertEquals("Date\r\n2014-01-01\r\n", new String(read(new GZIPInputStream(new FileInputStream(first))), "UTF-8"));
+            assertEquals("Date\r\n2014-01-02\r\n", new String(read(new GZIPInputStream(new FileInputStream(second))), "UTF-8"));
+        } finally {
+            compressors.shutdown();
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+            bytes.write(buffer, 0, count);
+        }
+        in.close();
+        return bytes.toByteArray();
+    }
+}
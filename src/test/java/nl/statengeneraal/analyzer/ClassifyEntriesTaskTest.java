@@ -0,0 +1,78 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClassifyEntriesTaskTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void classifiesALargeCommitInRangesInTheOrderOfItsEntries() throws Exception {
+        LawRepository repository = new LawRepository(folder.newFolder());
+        int laws = ClassifyEntriesTask.PARALLEL_THRESHOLD + 44;
+        for (int i = 0; i < laws; i++) {
+            repository.write(path(i), LawRepository.LAW);
+        }
+        RevCommit imported = repository.commit("2014-01-01");
+        for (int i = 0; i < laws; i++) {
+            if (i % 3 == 0) {
+                repository.write(path(i), LawRepository.LAW.replace("iedereen", "niemand " + i));
+            } else if (i % 5 == 0) {
+                // Only whitespace, which is not a normative change
+                repository.write(path(i), LawRepository.LAW.replace("Deze wet", "Deze  wet"));
+            } else if (i % 7 == 0) {
+                repository.remove(path(i));
+            }
+        }
+        RevCommit changed = repository.commit("2014-01-02");
+
+        Options options = new Options();
+        ClassifyEntriesTask.ThreadLocalFormatters formatters =
+                new ClassifyEntriesTask.ThreadLocalFormatters(repository.getRepository(), options);
+        MyDiffFormatter formatter = formatters.get();
+        ObjectReader reader = repository.getRepository().newObjectReader();
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        List<DiffEntry> adds = formatter.scan(LawRepository.emptyTree(), repository.treeOf(imported, reader));
+        // Split at least twice before the ranges are classified one by one
+        assertTrue(adds.size() > 4 * ClassifyEntriesTask.SEQUENTIAL_THRESHOLD);
+        List<Analyze.Change> added = pool.invoke(new ClassifyEntriesTask(formatters, adds, 0, adds.size(), "2014-01-01"));
+        assertEquals(laws, added.size());
+        for (int i = 0; i < laws; i++) {
+            assertEquals(adds.get(i).getNewPath(), added.get(i).bwbId + "/README.md");
+        }
+
+        List<DiffEntry> entries = formatter.scan(repository.treeOf(imported, reader), repository.treeOf(changed, reader));
+        List<Analyze.Change> expected = new ArrayList<Analyze.Change>();
+        for (DiffEntry entry : entries) {
+            Analyze.Change change = Analyze.classifyEntry(formatter, entry, "2014-01-02");
+            if (change != null) {
+                expected.add(change);
+            }
+        }
+        List<Analyze.Change> classified = pool.invoke(new ClassifyEntriesTask(formatters, entries, 0, entries.size(), "2014-01-02"));
+        assertEquals(CommitSchedulerTest.describe(expected), CommitSchedulerTest.describe(classified));
+        assertTrue(classified.size() < entries.size());
+
+        reader.release();
+        formatters.release();
+        pool.shutdown();
+        repository.close();
+    }
+
+    private static String path(int law) {
+        return String.format("BWBR%07d/README.md", law);
+    }
+}
@@ -0,0 +1,65 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class CommitDatesTest {
+    @Test
+    public void parsesDatesSurroundedByWhitespace() throws Exception {
+        assertEquals(0, parse("1970-01-01"));
+        assertEquals(16071, parse("2014-01-01\n"));
+        assertEquals(-56875, parse(" 1814-04-14 \r\n"));
+        assertEquals(CommitDates.NONE, parse("2014-01-01 Merge"));
+        assertEquals(CommitDates.NONE, parse("2014-1-01"));
+        assertEquals(CommitDates.NONE, parse("2014/01/01"));
+        assertEquals(CommitDates.NONE, parse("2014-02-29"));
+        assertEquals(CommitDates.NONE, parse("2014-13-01"));
+        assertEquals(CommitDates.NONE, parse(""));
+    }
+
+    @Test
+    public void countsDaysLikeTheGregorianCalendar() {
+        GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        // Before 1582 GregorianCalendar switches to the Julian calendar
+        calendar.clear();
+        calendar.set(1600, Calendar.JANUARY, 1);
+        for (int i = 0; i < 200000; i++) {
+            int day = (int) (calendar.getTimeInMillis() / (24L * 60 * 60 * 1000));
+            String date = String.format(Locale.ROOT, "%04d-%02d-%02d", calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+                    calendar.get(Calendar.DAY_OF_MONTH));
+            assertEquals(date, day, CommitDates.toDay(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+                    calendar.get(Calendar.DAY_OF_MONTH)));
+            assertEquals(date, CommitDates.format(day));
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+    }
+
+    @Test
+    public void takesTheDayFromTheMessageOrTheTimes() throws Exception {
+        // Authored at 23:30 in Amsterdam, committed at 00:30 the next day in UTC
+        RevCommit commit = RevCommit.parse(("tree 4b825dc642cb6eb9a060e54bf8d69288fbee4904\n"
+                + "author A <a@example.org> 1388615400 +0100\n"
+                + "committer C <c@example.org> 1388622600 +0000\n"
+                + "\n"
+                + "2014-01-01\n").getBytes("UTF-8"));
+        TimeZone amsterdam = TimeZone.getTimeZone("Europe/Amsterdam");
+
+        assertEquals("2014-01-01", CommitDates.format(CommitDates.dayOf(commit, null, CommitDates.Source.MESSAGE, amsterdam)));
+        assertEquals("2014-01-01", CommitDates.format(CommitDates.dayOf(commit, null, CommitDates.Source.AUTHOR, amsterdam)));
+        assertEquals("2014-01-02", CommitDates.format(CommitDates.dayOf(commit, null, CommitDates.Source.COMMITTER, amsterdam)));
+        assertEquals("2014-01-02", CommitDates.format(CommitDates.dayOf(commit, null, CommitDates.Source.COMMITTER,
+                TimeZone.getTimeZone("UTC"))));
+    }
+
+    private static int parse(String message) throws Exception {
+        byte[] raw = message.getBytes("UTF-8");
+        return CommitDates.parse(raw, 0, raw.length);
+    }
+}
@@ -0,0 +1,83 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CommitSchedulerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void startsWithTheMostExpensiveCommits() throws Exception {
+        LawRepository repository = new LawRepository(folder.newFolder());
+        repository.write("BWBR0000001/README.md", LawRepository.LAW);
+        repository.write("BWBR0000002/README.md", LawRepository.LAW);
+        RevCommit small = repository.commit("2014-01-01");
+        StringBuilder large = new StringBuilder(LawRepository.LAW);
+        for (int i = 2; i < 500; i++) {
+            large.append("\n## Artikel ").append(i).append("\n\nDeze wet geldt ook voor ").append(i).append(".\n");
+        }
+        repository.write("BWBR0000001/README.md", large.toString());
+        RevCommit modified = repository.commit("2014-01-02");
+        for (int i = 3; i < 13; i++) {
+            repository.write(String.format("BWBR%07d/README.md", i), LawRepository.LAW);
+        }
+        RevCommit added = repository.commit("2014-01-03");
+
+        Options options = new Options();
+        ClassifyEntriesTask.ThreadLocalFormatters formatters =
+                new ClassifyEntriesTask.ThreadLocalFormatters(repository.getRepository(), options);
+        MyDiffFormatter formatter = formatters.get();
+        ObjectReader reader = repository.getRepository().newObjectReader();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        CommitScheduler scheduler = new CommitScheduler(repository.getRepository(), pool, formatters, null);
+        List<DiffEntry> first = formatter.scan(LawRepository.emptyTree(), repository.treeOf(small, reader));
+        CommitUnit two = scheduler.add("2014-01-01", first);
+        // A modification costs the sizes of both versions, an add or delete a fixed amount
+        CommitUnit one = scheduler.add("2014-01-02",
+                formatter.scan(repository.treeOf(small, reader), repository.treeOf(modified, reader)));
+        CommitUnit ten = scheduler.add("2014-01-03",
+                formatter.scan(repository.treeOf(modified, reader), repository.treeOf(added, reader)));
+        CommitUnit again = scheduler.add("2014-01-04", first);
+        assertTrue(one.estimatedCost > large.length());
+        assertTrue(ten.estimatedCost > two.estimatedCost);
+        assertEquals(two.estimatedCost, again.estimatedCost);
+
+        // Equally expensive units keep the order they were added in
+        assertEquals(Arrays.asList(one, ten, two, again), scheduler.largestFirst());
+
+        List<CommitUnit> units = scheduler.run();
+        assertEquals(Arrays.asList(two, one, ten, again), units);
+        assertEquals("[BWBR0000001 add, BWBR0000002 add]", describe(two.getChanges()));
+        assertEquals("[BWBR0000001 modify]", describe(one.getChanges()));
+        assertEquals(10, ten.getChanges().size());
+        assertEquals("BWBR0000003", ten.getChanges().get(0).bwbId);
+        assertEquals("BWBR0000012", ten.getChanges().get(9).bwbId);
+
+        scheduler.release();
+        reader.release();
+        formatters.release();
+        pool.shutdown();
+        repository.close();
+    }
+
+    static String describe(List<Analyze.Change> changes) {
+        List<String> descriptions = new ArrayList<String>();
+        for (Analyze.Change change : changes) {
+            descriptions.add(change.bwbId + " " + change.type);
+        }
+        return descriptions.toString();
+    }
+}
@@ -0,0 +1,50 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DiffBudgetTest {
+    @Test
+    public void abandonsADiffThatTakesTooLong() {
+        // A large table of identical rows is the worst case of the histogram diff
+        StringBuilder a = new StringBuilder();
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            a.append("| - | - |\n");
+            b.append(i % 2 == 0 ? "| - | - |\n" : "| + | - |\n");
+        }
+        DiffBudget budget = new DiffBudget(Long.MAX_VALUE, 0);
+        try {
+            DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.HISTOGRAM).diff(
+                    budget.startClock(RawTextComparator.WS_IGNORE_ALL),
+                    new LawText(a.toString().getBytes()), new LawText(b.toString().getBytes()));
+            fail("The diff should have been abandoned");
+        } catch (DiffBudget.TimeoutException expected) {
+            // The classification falls back to comparing the lines
+        }
+    }
+
+    @Test
+    public void limitsTheSizeOfTheTexts() {
+        DiffBudget budget = new DiffBudget(10, 1000);
+        assertTrue(budget.fits(new byte[4], new byte[6]));
+        assertFalse(budget.fits(new byte[4], new byte[7]));
+    }
+
+    @Test
+    public void comparesTextsThatWereNotDiffedByTheirLines() {
+        MyDiffFormatter.FormatResult comparison = new MyDiffFormatter.FormatResult();
+        comparison.a = new LawText("## Artikel 1\n\nDeze wet geldt voor *iedereen*.\n".getBytes());
+        comparison.b = new LawText("## Artikel  1\nDeze wet\ngeldt voor iedereen.".getBytes());
+        assertEquals(ModifyClassifier.Outcome.NOT_NORMATIVE, ModifyClassifier.classify(comparison));
+
+        comparison.b = new LawText("## Artikel 1\n\nDeze wet geldt voor niemand.\n".getBytes());
+        assertEquals(ModifyClassifier.Outcome.NORMATIVE, ModifyClassifier.classify(comparison));
+    }
+}
@@ -0,0 +1,60 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class EditRecorderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String LAW = "# Wet\n\n## Artikel 1\n\nDeze wet geldt voor *iedereen*.\n\n## Artikel 2\n\nDeze wet geldt voor *iedereen*.\n";
+
+    @Test
+    public void recordsOnlyNormativeEditsAsExcerpts() throws Exception {
+        String changed = LAW.replace("## Artikel 1", "##  Artikel 1").replaceFirst("iedereen", "niemand");
+        List<Analyze.EditChange> edits = new EditRecorder(15, null).record("2014-01-01", "BWBR0000001", normativeEdits(LAW, changed));
+
+        assertEquals(1, edits.size());
+        assertEquals(5, edits.get(0).line);
+        assertEquals("Deze wet geldt …", edits.get(0).before);
+        assertEquals("Deze wet geldt …", edits.get(0).after);
+    }
+
+    @Test
+    public void writesEachFullTextOnce() throws Exception {
+        File file = new File(folder.getRoot(), "texts");
+        EditRecorder recorder = new EditRecorder(15, new EditTexts(file));
+        List<Analyze.EditChange> edits = recorder.record("2014-01-01", "BWBR0000001",
+                normativeEdits(LAW, LAW.replace("iedereen", "niemand")));
+        recorder.close();
+
+        assertEquals(2, edits.size());
+        assertEquals(edits.get(0).before, edits.get(1).before);
+        // The id of a text is its git blob id: printf 'Deze wet geldt voor iedereen.' | git hash-object --stdin
+        assertEquals("26984f219322ff70f420f0a1be17cf6c28a2afdf", edits.get(0).before);
+        String contents = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        assertEquals(edits.get(0).before + " 29\nDeze wet geldt voor iedereen.\n"
+                + edits.get(0).after + " 28\nDeze wet geldt voor niemand.\n", contents);
+    }
+
+    private static List<ModifyClassifier.RenderedEdit> normativeEdits(String a, String b) {
+        MyDiffFormatter.FormatResult comparison = new MyDiffFormatter.FormatResult();
+        comparison.a = new LawText(a.getBytes());
+        comparison.b = new LawText(b.getBytes());
+        comparison.edits = DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.HISTOGRAM)
+                .diff(RawTextComparator.WS_IGNORE_ALL, comparison.a, comparison.b);
+        List<ModifyClassifier.RenderedEdit> normativeEdits = new ArrayList<ModifyClassifier.RenderedEdit>();
+        assertEquals(ModifyClassifier.Outcome.NORMATIVE, ModifyClassifier.classify(comparison, normativeEdits));
+        return normativeEdits;
+    }
+}
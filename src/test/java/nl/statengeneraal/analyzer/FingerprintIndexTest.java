@@ -0,0 +1,79 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String LAW = "# Wet\n\n## Artikel 1\n\nDeze wet geldt voor *iedereen*.\n";
+    private static final ObjectId OLD = ObjectId.fromRaw(new int[]{1, 0, 0, 0, 0});
+    private static final ObjectId NEW = ObjectId.fromRaw(new int[]{2, 0, 0, 0, 0});
+    private static final ObjectId CHANGED = ObjectId.fromRaw(new int[]{3, 0, 0, 0, 0});
+
+    @Test
+    public void versionsThatOnlyDifferInMarkupHaveTheSameFingerprint() throws Exception {
+        FingerprintIndex index = new FingerprintIndex(folder.newFile());
+        index.get(OLD, text(LAW));
+        index.get(NEW, text(LAW.replace("Deze wet", "Deze  wet").replace("*iedereen*", "iedereen")));
+        index.get(CHANGED, text(LAW.replace("iedereen", "niemand")));
+        index.close();
+
+        assertTrue(index.isSame(OLD, NEW));
+        assertFalse(index.isSame(OLD, CHANGED));
+        assertEquals(FingerprintIndex.Fingerprint.of("WetArtikel1Dezewetgeldtvooriedereen.".getBytes("UTF-8")), index.get(OLD));
+    }
+
+    @Test
+    public void keepsTheFingerprintsOfEarlierRuns() throws Exception {
+        File file = folder.newFile();
+        FingerprintIndex index = new FingerprintIndex(file);
+        // Enough versions to grow the table
+        for (int i = 0; i < 3000; i++) {
+            index.get(ObjectId.fromRaw(new int[]{i, i, 0, 0, 0}), text(LAW.replace("1", Integer.toString(i))));
+        }
+        index.close();
+
+        FingerprintIndex reopened = new FingerprintIndex(file);
+        assertEquals(3000, reopened.size());
+        for (int i = 0; i < 3000; i++) {
+            ObjectId id = ObjectId.fromRaw(new int[]{i, i, 0, 0, 0});
+            assertEquals(index.get(id), reopened.get(id));
+        }
+        assertNull(reopened.get(CHANGED));
+        reopened.close();
+    }
+
+    @Test
+    public void dropsIncompleteRecords() throws Exception {
+        File file = folder.newFile();
+        FingerprintIndex index = new FingerprintIndex(file);
+        index.get(OLD, text(LAW));
+        index.get(NEW, text(LAW));
+        index.close();
+        // As if the run was killed while writing the last record
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        raw.setLength(raw.length() - 1);
+        raw.close();
+
+        FingerprintIndex reopened = new FingerprintIndex(file);
+        assertEquals(index.get(OLD), reopened.get(OLD));
+        assertNull(reopened.get(NEW));
+        reopened.close();
+    }
+
+    private static LawText text(String markdown) throws Exception {
+        return new LawText(markdown.getBytes("UTF-8"));
+    }
+}
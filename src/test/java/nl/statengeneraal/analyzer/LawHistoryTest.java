@@ -0,0 +1,73 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class LawHistoryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void givesEachRepeatedComparisonTheDateOfItsCommit() throws Exception {
+        LawRepository repository = new LawRepository(folder.newFolder());
+        // A law that goes back and forth between two texts, for more versions than one segment holds, next to a law
+        // that changes once
+        List<RevCommit> commits = new ArrayList<RevCommit>();
+        for (int day = 0; day < LawHistory.SEGMENT_SIZE + 8; day++) {
+            repository.write("BWBR0000001/README.md", day % 2 == 0 ? LawRepository.LAW : LawRepository.LAW.replace("iedereen", "niemand"));
+            if (day == 5) {
+                repository.write("BWBR0000002/README.md", LawRepository.LAW);
+            }
+            commits.add(repository.commit(String.format("2014-%02d-%02d", 1 + day / 28, 1 + day % 28)));
+        }
+
+        ClassifyEntriesTask.ThreadLocalFormatters formatters =
+                new ClassifyEntriesTask.ThreadLocalFormatters(repository.getRepository(), new Options());
+        MyDiffFormatter formatter = formatters.get();
+        ObjectReader reader = repository.getRepository().newObjectReader();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        LawHistory history = new LawHistory(pool, formatters, null);
+        List<String> expected = new ArrayList<String>();
+        RevCommit previous = null;
+        for (RevCommit commit : commits) {
+            List<DiffEntry> entries = formatter.scan(previous != null ? repository.treeOf(previous, reader) : LawRepository.emptyTree(),
+                    repository.treeOf(commit, reader));
+            for (DiffEntry entry : entries) {
+                Analyze.Change change = Analyze.classifyEntry(formatter, entry, commit.getFullMessage());
+                if (change != null) {
+                    expected.add(describe(change));
+                }
+            }
+            history.add(commit.getFullMessage(), entries);
+            previous = commit;
+        }
+        assertEquals(2, history.getLawCount());
+
+        List<String> classified = new ArrayList<String>();
+        for (CommitUnit unit : history.run()) {
+            for (Analyze.Change change : unit.getChanges()) {
+                classified.add(describe(change));
+            }
+        }
+        assertEquals(expected, classified);
+
+        pool.shutdown();
+        reader.release();
+        formatters.release();
+        repository.close();
+    }
+
+    private static String describe(Analyze.Change change) {
+        return change.date + " " + change.bwbId + " " + change.type + " " + change.charactersInserted + " " + change.charactersDeleted;
+    }
+}
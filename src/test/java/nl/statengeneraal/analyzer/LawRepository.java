@@ -0,0 +1,78 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A small law repository for the tests, with a commit per date
+ */
+class LawRepository {
+    static final String LAW = "# Wet op de proef\n\n## Artikel 1\n\nDeze wet geldt voor iedereen.\n\n## Artikel 2\n\nZie [artikel 1](#artikel-1).\n";
+
+    final File directory;
+    final Git git;
+
+    LawRepository(File directory) throws Exception {
+        this.directory = directory;
+        git = Git.init().setDirectory(directory).call();
+    }
+
+    /**
+     * @return the git directory, as given to {@link Options#repository}
+     */
+    File getGitDirectory() {
+        return new File(directory, ".git");
+    }
+
+    Repository getRepository() {
+        return git.getRepository();
+    }
+
+    void write(String path, String contents) throws IOException {
+        File file = new File(directory, path);
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    void remove(String path) throws Exception {
+        git.rm().addFilepattern(path).call();
+    }
+
+    RevCommit commit(String message) throws Exception {
+        git.add().addFilepattern(".").call();
+        return git.commit().setMessage(message).call();
+    }
+
+    /**
+     * @return a parser of the tree of the commit, or of the empty tree if the commit is null
+     */
+    CanonicalTreeParser treeOf(RevCommit commit, ObjectReader reader) throws IOException {
+        CanonicalTreeParser parser = new CanonicalTreeParser();
+        RevWalk walk = new RevWalk(reader);
+        parser.reset(reader, walk.parseCommit(commit).getTree());
+        return parser;
+    }
+
+    static EmptyTreeIterator emptyTree() {
+        return new EmptyTreeIterator();
+    }
+
+    void close() {
+        git.getRepository().close();
+    }
+}
@@ -0,0 +1,72 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.jsoup.Jsoup;
+import org.junit.Test;
+import org.tautua.markdownpapers.Markdown;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ModifyClassifierTest {
+    private static final String LAW = "# Wet\n\n## Artikel 1\n\nDeze wet geldt voor *iedereen*.\n\n## Artikel 2\n\nZie [artikel 1](#artikel-1).\n";
+
+    @Test
+    public void textChangesAreNormative() {
+        assertEquals(ModifyClassifier.Outcome.NORMATIVE, classify(LAW, LAW.replace("iedereen", "niemand")));
+        assertEquals(ModifyClassifier.Outcome.NORMATIVE, classify(LAW, LAW + "\n## Artikel 3\n\nVervallen.\n"));
+    }
+
+    @Test
+    public void whitespaceAndMarkupChangesAreNotNormative() {
+        assertEquals(ModifyClassifier.Outcome.NOT_NORMATIVE, classify(LAW, LAW.replace("\n\n", "\n\n\n")));
+        assertEquals(ModifyClassifier.Outcome.NOT_NORMATIVE, classify(LAW, LAW.replace("*iedereen*", "**iedereen**")));
+        assertEquals(ModifyClassifier.Outcome.NOT_NORMATIVE, classify(LAW, LAW.replace("#artikel-1", "#artikel-een")));
+    }
+
+    @Test
+    public void binaryContentsAreNotCompared() {
+        MyDiffFormatter.FormatResult comparison = new MyDiffFormatter.FormatResult();
+        comparison.b = new LawText(LAW.getBytes());
+        assertEquals(ModifyClassifier.Outcome.NOT_TEXT, ModifyClassifier.classify(comparison));
+    }
+
+    @Test
+    public void plainTextNormalisesLikeRenderedMarkdown() throws Exception {
+        String[] texts = {"", "  ", "Deze wet geldt voor iedereen.", "Artikel 1, eerste lid: 5% van € 100,-",
+                "1 januari 2014", "  Zie ook \"artikel 2\" en 'artikel 3'.", "a + b = c; d - e = f?"};
+        for (String text : texts) {
+            assertTrue(text, ModifyClassifier.isPlain(text));
+            assertEquals(text, render(text), ModifyClassifier.normalise(text));
+        }
+        String[] markup = {"*iedereen*", "[artikel 1](#artikel-1)", "1. eerste", "- lid", "> citaat", "a &amp; b",
+                "<b>vet</b>", "# Kop", "a\rb"};
+        for (String text : markup) {
+            assertFalse(text, ModifyClassifier.isPlain(text));
+            assertEquals(text, render(text), ModifyClassifier.normalise(text));
+        }
+    }
+
+    private static ModifyClassifier.Outcome classify(String a, String b) {
+        MyDiffFormatter.FormatResult comparison = new MyDiffFormatter.FormatResult();
+        comparison.a = new LawText(a.getBytes());
+        comparison.b = new LawText(b.getBytes());
+        comparison.edits = DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.HISTOGRAM)
+                .diff(RawTextComparator.WS_IGNORE_ALL, comparison.a, comparison.b);
+        return ModifyClassifier.classify(comparison);
+    }
+
+    /**
+     * The normalisation without shortcuts
+     */
+    private static String render(String markdown) throws Exception {
+        StringWriter html = new StringWriter();
+        new Markdown().transform(new StringReader(markdown), html);
+        return Jsoup.parse(html.toString()).text().replaceAll("[\\s\\*]", "");
+    }
+}
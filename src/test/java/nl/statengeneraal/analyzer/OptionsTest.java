@@ -0,0 +1,87 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OptionsTest {
+    @Test
+    public void defaultsToTheLawRepositoryNextToThisOne() {
+        Options options = Options.parse(new String[0]);
+        assertEquals(Options.PATH_TO_GIT_REPO, options.repository);
+        assertEquals(Options.COMMIT_20140926, options.start);
+        assertNull(options.stop);
+        assertEquals(Analyze.Engine.PIPELINE, options.engine);
+        assertEquals(Options.OutputFormat.CSV, options.format);
+        assertEquals(new File("result.csv"), options.output);
+        assertEquals(0, options.deltaBaseCacheLimit);
+        assertFalse(options.help);
+    }
+
+    @Test
+    public void takesValuesAfterAnEqualsSignOrAsTheNextArgument() {
+        Options options = Options.parse(new String[]{"--repo=laws/.git", "--threads", "3", "--engine=scheduled",
+                "--algorithm", "myers", "--format", "csv-gzip", "--max-diff-size=2", "--pack-deltas", "-h"});
+        assertEquals(new File("laws/.git"), options.repository);
+        assertEquals(3, options.threads);
+        assertEquals(Analyze.Engine.SCHEDULED, options.engine);
+        assertEquals(DiffAlgorithm.SupportedAlgorithm.MYERS, options.algorithm);
+        assertEquals(Options.OutputFormat.CSV_GZIP, options.format);
+        assertEquals(2L * 1024 * 1024, options.maxDiffSize);
+        assertTrue(options.usePackDeltas);
+        assertTrue(options.help);
+    }
+
+    @Test
+    public void rejectsUnknownOptionsAndInvalidValues() {
+        rejects("--unknown", "1");
+        rejects("laws");
+        rejects("--threads");
+        rejects("--threads", "0");
+        rejects("--threads", "many");
+        rejects("--engine", "fastest");
+        rejects("--time-zone", "Europe/Nowhere");
+        rejects("--since", "2014-1-01");
+        rejects("--until", "2014-02-30");
+        rejects("--normalised-texts", "texts");
+    }
+
+    @Test
+    public void keepsTheCacheSizesWithinAnInt() {
+        assertEquals(2047 * 1024 * 1024, Options.parse(new String[]{"--delta-base-cache", "2047"}).deltaBaseCacheLimit);
+        assertEquals(8 * 1024, Options.parse(new String[]{"--packed-git-window", "8"}).packedGitWindowSize);
+        assertEquals(4096L * 1024 * 1024, Options.parse(new String[]{"--packed-git-limit", "4096"}).packedGitLimit);
+        rejects("--delta-base-cache", "2048");
+        rejects("--packed-git-window", "2097152");
+    }
+
+    @Test
+    public void includesTheDaysFromSinceUntilUntil() {
+        Options options = Options.parse(new String[]{"--since", "2014-01-31", "--until=2014-02-01"});
+        assertFalse(options.includes(CommitDates.toDay(2014, 1, 30)));
+        assertTrue(options.includes(CommitDates.toDay(2014, 1, 31)));
+        assertTrue(options.includes(CommitDates.toDay(2014, 2, 1)));
+        assertFalse(options.includes(CommitDates.toDay(2014, 2, 2)));
+        // A start commit without a date is only counted without a range
+        assertFalse(options.includes(CommitDates.NONE));
+        assertTrue(Options.parse(new String[0]).includes(CommitDates.NONE));
+        assertTrue(Options.parse(new String[0]).includes(CommitDates.toDay(1814, 4, 14)));
+    }
+
+    private static void rejects(String... args) {
+        try {
+            Options.parse(args);
+            fail("Accepted " + Arrays.toString(args));
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.internal.storage.pack.DeltaIndex;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PackDeltaEditsTest {
+    @Test
+    public void keepsTheLinesOutsideTheEditsOfRandomDeltas() throws Exception {
+        // Deltas as JGit packs them
+        Random random = new Random(7);
+        int translated = 0;
+        for (int test = 0; test < 3000; test++) {
+            List<String> linesA = new ArrayList<String>();
+            for (int i = random.nextInt(60); i > 0; i--) {
+                linesA.add("regel " + random.nextInt(20) + " tekst " + (random.nextBoolean() ? "lang lang lang lang" : "") + "\n");
+            }
+            List<String> linesB = new ArrayList<String>(linesA);
+            for (int i = random.nextInt(5); i >= 0; i--) {
+                int line = random.nextInt(linesB.size() + 1);
+                int operation = linesB.isEmpty() ? 0 : random.nextInt(3);
+                if (operation == 0) {
+                    linesB.add(line, "nieuw " + random.nextInt(1000) + "\n");
+                } else if (line < linesB.size() && operation == 1) {
+                    linesB.remove(line);
+                } else if (line < linesB.size()) {
+                    String text = linesB.get(line);
+                    int at = random.nextInt(text.length());
+                    linesB.set(line, text.substring(0, at) + "X" + text.substring(at));
+                }
+            }
+            byte[] a = join(linesA, false);
+            // Sometimes without a line feed at the end
+            byte[] b = join(linesB, random.nextBoolean());
+            ByteArrayOutputStream delta = new ByteArrayOutputStream();
+            new DeltaIndex(a).encode(delta, b);
+
+            EditList edits = PackDeltaEdits.toEdits(delta.toByteArray(), a, b);
+            if (edits != null) {
+                checkUnchangedOutside(edits, new RawText(a), new RawText(b));
+                translated++;
+            }
+        }
+        // The others moved or repeated text
+        assertTrue(translated > 500);
+    }
+
+    /**
+     * Checks that the lines between the edits are the same in both texts
+     */
+    private static void checkUnchangedOutside(EditList edits, RawText a, RawText b) {
+        List<Edit> all = new ArrayList<Edit>(edits);
+        all.add(new Edit(a.size(), a.size(), b.size(), b.size()));
+        int lineA = 0;
+        int lineB = 0;
+        for (Edit edit : all) {
+            assertTrue(edit.getBeginA() >= lineA);
+            assertEquals(edit.getBeginA() - lineA, edit.getBeginB() - lineB);
+            for (; lineA < edit.getBeginA(); lineA++, lineB++) {
+                assertEquals(a.getString(lineA), b.getString(lineB));
+            }
+            lineA = edit.getEndA();
+            lineB = edit.getEndB();
+        }
+    }
+
+    private static byte[] join(List<String> lines, boolean dropLastLineFeed) throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line);
+        }
+        if (dropLastLineFeed && text.length() > 0) {
+            text.setLength(text.length() - 1);
+        }
+        return text.toString().getBytes("UTF-8");
+    }
+}
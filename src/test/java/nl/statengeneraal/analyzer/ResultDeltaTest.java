@@ -0,0 +1,91 @@
+package nl.statengeneraal.analyzer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+public class ResultDeltaTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String HEADER = "Date,BWB ID,Modification type,Similarity";
+
+    @Test
+    public void writesTheRowsInsertedAndRemoved() throws Exception {
+        File previous = table(
+                "2014-01-01,BWBR0000001,add,",
+                "2014-01-02,BWBR0000001,modify,0.5000",
+                "2014-01-02,BWBR0000002,delete,",
+                "2014-01-03,BWBR0000001,modify,0.9000",
+                "2014-01-03,BWBR0000001,modify,0.8000");
+        File current = table(
+                "2014-01-01,BWBR0000001,add,",
+                "2014-01-02,BWBR0000001,modify,0.6000",
+                "2014-01-03,BWBR0000001,modify,0.9000",
+                "2014-01-03,BWBR0000001,modify,0.8000",
+                "2014-01-04,BWBR0000003,add,");
+        File delta = folder.newFile();
+
+        assertEquals(4, ResultDelta.write(previous, current, delta));
+        assertEquals(Arrays.asList(
+                "Delta," + HEADER,
+                "remove,2014-01-02,BWBR0000001,modify,0.5000",
+                "insert,2014-01-02,BWBR0000001,modify,0.6000",
+                "remove,2014-01-02,BWBR0000002,delete,",
+                "insert,2014-01-04,BWBR0000003,add,"), lines(delta));
+    }
+
+    @Test
+    public void insertsAllRowsWithoutAPreviousResult() throws Exception {
+        File current = table("2014-01-01,BWBR0000001,add,", "2014-01-01,BWBR0000002,add,");
+        File delta = folder.newFile();
+
+        assertEquals(2, ResultDelta.write(null, current, delta));
+        assertEquals("insert,2014-01-01,BWBR0000002,add,", lines(delta).get(2));
+    }
+
+    @Test
+    public void refusesAnUnorderedResult() throws Exception {
+        File previous = table("2014-01-02,BWBR0000001,add,", "2014-01-01,BWBR0000001,add,");
+        try {
+            ResultDelta.write(previous, table("2014-01-01,BWBR0000001,add,"), folder.newFile());
+            fail();
+        } catch (ResultDelta.NotOrderedException e) {
+            assertEquals(previous, e.getFile());
+        }
+    }
+
+    @Test
+    public void hashesEmptyAndMissingCellsDifferently() {
+        assertNotEquals(ResultDelta.hash(Arrays.asList("a", "")), ResultDelta.hash(Arrays.asList("a", null)));
+        assertNotEquals(ResultDelta.hash(Arrays.asList("ab", "")), ResultDelta.hash(Arrays.asList("a", "b")));
+    }
+
+    private File table(String... rows) throws IOException {
+        File file = folder.newFile();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        writer.write(HEADER + "\r\n");
+        for (String row : rows) {
+            writer.write(row + "\r\n");
+        }
+        writer.close();
+        return file;
+    }
+
+    private static List<String> lines(File file) throws IOException {
+        return Files.readAllLines(file.toPath());
+    }
+}
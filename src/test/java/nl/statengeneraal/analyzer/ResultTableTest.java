@@ -0,0 +1,115 @@
+package nl.statengeneraal.analyzer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResultTableTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String HEADER = "Date,BWB ID,Modification type,Before,After,Adds,Modifies,Deletes,"
+            + "Characters inserted,Characters deleted,Similarity,Fallback\r\n";
+
+    @Test
+    public void readsTheRowsOfEveryRange() throws Exception {
+        File file = folder.newFile();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        writer.write(table());
+        writer.close();
+
+        // Ranges of 50 bytes, which end in the middle of rows
+        check(ResultTable.read(file, 3, 50));
+        check(ResultTable.read(file, 1));
+    }
+
+    @Test
+    public void readsTheChunksOfAGzipTable() throws Exception {
+        File file = folder.newFile();
+        Writer writer = new ChunkedGzipWriter(file, 2, 100);
+        writer.write(table());
+        writer.close();
+
+        check(ResultTable.read(file, 3));
+    }
+
+    @Test
+    public void readsTheTableOfRunsBeforeTheMagnitudes() throws Exception {
+        // Committed with the 8 columns up to Deletes
+        ResultTable table = ResultTable.read(new File("result.csv"), 2);
+        assertEquals(26833, table.size());
+        assertEquals("1996-07-01", table.getDate(0));
+        assertEquals("BWBR0008108", table.getBwbId(0));
+        assertEquals(ResultTable.ADD, table.getType(0));
+        assertEquals(ResultTable.NONE, table.getCharactersInserted(0));
+        assertTrue(Float.isNaN(table.getSimilarity(0)));
+        assertArrayEquals(new int[]{22988, 0, 3845}, table.countPerType());
+    }
+
+    @Test
+    public void refusesAnotherTable() throws Exception {
+        File file = folder.newFile();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        writer.write("Date,BWB ID,Article\r\n2014-01-01,BWBR0000001,Artikel 1\r\n");
+        writer.close();
+
+        try {
+            ResultTable.read(file, 1);
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static String table() {
+        StringBuilder table = new StringBuilder(HEADER);
+        for (int i = 0; i < 300; i++) {
+            String date = "2014-0" + (1 + i % 3) + "-1" + i % 10;
+            String law = (i % 5 == 0 ? "BWBV" : "BWBR") + String.format("%07d", i % 40);
+            if (i % 3 == 0) {
+                table.append(date).append(',').append(law).append(",add,,,1,0,0,,,,\r\n");
+            } else if (i % 3 == 1) {
+                table.append(date).append(',').append(law).append(",modify,a,b,0,1,0,").append(i).append(",7,0.2500,\r\n");
+            } else {
+                table.append(date).append(',').append(law).append(",delete,,,0,0,1,,,,\r\n");
+            }
+        }
+        // The last row does not need a line break
+        return table.substring(0, table.length() - 2);
+    }
+
+    private static void check(ResultTable table) {
+        assertEquals(300, table.size());
+        assertArrayEquals(new int[]{100, 100, 100}, table.countPerType());
+        assertEquals("2014-01-10", table.getDate(0));
+        assertEquals("BWBV0000000", table.getBwbId(0));
+        assertEquals(ResultTable.ADD, table.getType(0));
+        assertEquals(ResultTable.NONE, table.getCharactersInserted(0));
+        assertEquals(1, table.getCharactersInserted(1));
+        assertEquals(7, table.getCharactersDeleted(1));
+        assertEquals(0.25f, table.getSimilarity(1), 0);
+        assertTrue(Float.isNaN(table.getSimilarity(299)));
+        assertEquals("2014-03-19", table.getDate(299));
+
+        Map<String, int[]> perDay = table.countPerDay();
+        assertEquals(30, perDay.size());
+        assertEquals("2014-01-10", perDay.keySet().iterator().next());
+        assertArrayEquals(new int[]{10, 0, 0}, perDay.get("2014-01-10"));
+        Map<String, int[]> perLaw = table.countPerLaw();
+        assertEquals(40, perLaw.size());
+        assertEquals("BWBR0000001", perLaw.keySet().iterator().next());
+        assertArrayEquals(new int[]{2, 3, 3}, perLaw.get("BWBR0000001"));
+    }
+}
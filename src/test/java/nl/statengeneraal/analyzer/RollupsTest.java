@@ -0,0 +1,82 @@
+package nl.statengeneraal.analyzer;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class RollupsTest {
+    private static final String COLUMNS = "Adds,Modifies,Deletes,BWBR adds,BWBR modifies,BWBR deletes,"
+            + "BWBV adds,BWBV modifies,BWBV deletes";
+
+    @Test
+    public void rollsUpTheDaysInOnePass() throws Exception {
+        Rollups rollups = new Rollups();
+        // Out of order, so the arrays grow to both sides
+        rollups.add("2015-01-02", "BWBV0000001", "modify");
+        rollups.add("2014-12-29", "BWBR0000001", "add");
+        rollups.add("2014-12-31", "BWBR0000002", "delete");
+        rollups.add("2014-12-31", "BWBR0000001", "modify");
+        rollups.add("2013-12-30", "BWBR0000003", "add");
+        // The message of a start commit that is not a date
+        assertFalse(rollups.add("Initial commit", "BWBR0000004", "add"));
+        assertEquals(369, rollups.getDayCount());
+
+        StringWriter daily = new StringWriter();
+        StringWriter weekly = new StringWriter();
+        StringWriter monthly = new StringWriter();
+        StringWriter yearly = new StringWriter();
+        StringWriter rolling = new StringWriter();
+        rollups.write(daily, weekly, monthly, yearly, rolling);
+
+        List<String> days = lines(daily);
+        assertEquals("Date," + COLUMNS, days.get(0));
+        assertEquals(1 + 369, days.size());
+        assertEquals("2013-12-30,1,0,0,1,0,0,0,0,0", days.get(1));
+        assertEquals("2013-12-31,0,0,0,0,0,0,0,0,0", days.get(2));
+        assertEquals("2014-12-31,0,1,1,0,1,1,0,0,0", days.get(367));
+
+        // 2013-12-30 is in the first week of 2014, 2014-12-29 in the first week of 2015
+        assertEquals(Arrays.asList("Week," + COLUMNS, "2014-W01,1,0,0,1,0,0,0,0,0"), lines(weekly).subList(0, 2));
+        assertEquals("2015-W01,1,2,1,1,1,1,0,1,0", lines(weekly).get(53));
+        assertEquals(1 + 53, lines(weekly).size());
+
+        assertEquals(Arrays.asList("Month," + COLUMNS, "2013-12,1,0,0,1,0,0,0,0,0", "2014-01,0,0,0,0,0,0,0,0,0"),
+                lines(monthly).subList(0, 3));
+        assertEquals("2014-12,1,1,1,1,1,1,0,0,0", lines(monthly).get(13));
+        assertEquals("2015-01,0,1,0,0,0,0,0,1,0", lines(monthly).get(14));
+
+        assertEquals(Arrays.asList("Year," + COLUMNS, "2013,1,0,0,1,0,0,0,0,0", "2014,1,1,1,1,1,1,0,0,0",
+                "2015,0,1,0,0,0,0,0,1,0"), lines(yearly));
+
+        List<String> windows = lines(rolling);
+        assertEquals("Last day," + COLUMNS, windows.get(0));
+        assertEquals("2014-01-28,1,0,0,1,0,0,0,0,0", windows.get(30));
+        assertEquals("2014-01-29,0,0,0,0,0,0,0,0,0", windows.get(31));
+        assertEquals("2015-01-02,1,2,1,1,1,1,0,1,0", windows.get(369));
+    }
+
+    @Test
+    public void writesEmptyTablesWithoutChanges() throws Exception {
+        StringWriter daily = new StringWriter();
+        new Rollups().write(daily, new StringWriter(), new StringWriter(), new StringWriter(), new StringWriter());
+        assertEquals(Arrays.asList("Date," + COLUMNS), lines(daily));
+    }
+
+    @Test
+    public void numbersWeeksLikeIso() {
+        assertEquals("2015-W01", Rollups.isoWeek(CommitDates.toDay(2014, 12, 29)));
+        assertEquals("2015-W53", Rollups.isoWeek(CommitDates.toDay(2016, 1, 3)));
+        assertEquals("2016-W01", Rollups.isoWeek(CommitDates.toDay(2016, 1, 4)));
+        assertEquals("1970-W01", Rollups.isoWeek(0));
+        assertEquals("0814-W16", Rollups.isoWeek(CommitDates.toDay(814, 4, 14)));
+    }
+
+    private static List<String> lines(StringWriter writer) {
+        return Arrays.asList(writer.toString().split("\r\n"));
+    }
+}
@@ -0,0 +1,48 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TextCacheTest {
+    @Test
+    public void evictsLeastRecentlyUsedTexts() {
+        LawText text = new LawText("Artikel 1\nDeze wet geldt voor iedereen.\n".getBytes());
+        // Room for four texts
+        TextCache cache = new TextCache(4 * text.getMemorySize());
+        ObjectId[] ids = new ObjectId[5];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = ObjectId.fromRaw(new int[]{i, 0, 0, 0, 0});
+        }
+        for (int i = 0; i < 4; i++) {
+            cache.put(ids[i], text);
+        }
+        cache.get(ids[0]);
+        cache.put(ids[4], text);
+
+        assertTrue(cache.contains(ids[0]));
+        assertFalse(cache.contains(ids[1]));
+        assertTrue(cache.contains(ids[4]));
+    }
+
+    @Test
+    public void skipsLargeTexts() {
+        LawText text = new LawText("Artikel 1\n".getBytes());
+        TextCache cache = new TextCache(text.getMemorySize());
+        cache.put(ObjectId.zeroId(), text);
+
+        assertFalse(cache.contains(ObjectId.zeroId()));
+    }
+
+    @Test
+    public void hashesLinesLikeRawTextComparator() {
+        LawText text = new LawText("Artikel  1\n\tDeze wet\n".getBytes());
+        for (int i = 0; i < text.size(); i++) {
+            assertEquals(RawTextComparator.WS_IGNORE_ALL.hash(text, i), LawTextComparator.WS_IGNORE_ALL.hash(text, i));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.util.FileUtils;
+
+import java.io.File;
+
+/**
+ * Creates the law repository that the training run of the cds profile analyses: a few dozen laws over some dated
+ * commits, with normative changes in Markdown, changes of only whitespace or markup, and deletions, so the run loads
+ * the classes of every step of the analysis
+ */
+public class TrainingRepository {
+    private static final int LAWS = 40;
+    private static final int DAYS = 10;
+
+    public static void main(String[] args) throws Exception {
+        File directory = new File(args[0]);
+        FileUtils.delete(directory, FileUtils.RECURSIVE | FileUtils.SKIP_MISSING);
+        LawRepository repository = new LawRepository(directory);
+        String[] texts = new String[LAWS];
+        for (int day = 1; day <= DAYS; day++) {
+            for (int law = day - 1; law < LAWS; law += day) {
+                String path = String.format("BWBR%07d/README.md", law);
+                if (texts[law] != null && law % 7 == 0) {
+                    repository.remove(path);
+                    texts[law] = null;
+                    continue;
+                }
+                if (texts[law] != null && day % 3 == 0) {
+                    // Only whitespace and markup
+                    texts[law] = texts[law].replace("Deze wet geldt", "Deze  wet *geldt*").replace("\n\n##", "\n\n\n##");
+                } else {
+                    texts[law] = LawRepository.LAW.replace("iedereen", "*iedereen* vanaf dag " + day)
+                            + "\n## Artikel 3\n\n1. Zie [artikel 2](#artikel-2).\n2. Vervallen op dag " + day + ".\n";
+                }
+                repository.write(path, texts[law]);
+            }
+            repository.commit(String.format("2014-01-%02d", day));
+        }
+        repository.close();
+    }
+}
@@ -0,0 +1,47 @@
+package nl.statengeneraal.analyzer;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class UnitAppenderTest {
+    @Test
+    public void appendsTheUnitsInTheOrderOfTheWalk() throws Exception {
+        ChangeStore store = new ChangeStore();
+        UnitAppender appender = new UnitAppender(store);
+        List<CommitUnit> units = new ArrayList<CommitUnit>();
+        for (int i = 0; i < 4; i++) {
+            CommitUnit unit = new CommitUnit(i, "2014-01-0" + (4 - i), Collections.<DiffEntry>emptyList(), 0);
+            unit.setChanges(Arrays.asList(new Analyze.Change(unit.date, "BWBR000000" + i, "add", null, null)));
+            units.add(unit);
+        }
+
+        appender.add(units.get(2));
+        appender.add(units.get(1));
+        // Both wait for the first unit
+        assertEquals(0, appender.getAppended());
+        assertEquals(2, appender.getWaiting());
+        assertNotNull(units.get(2).getChanges());
+
+        appender.add(units.get(0));
+        assertEquals(3, appender.getAppended());
+        assertEquals(0, appender.getWaiting());
+        assertNull(units.get(2).getChanges());
+        appender.add(units.get(3));
+
+        List<String> bwbIds = new ArrayList<String>();
+        for (Analyze.Change change : store) {
+            bwbIds.add(change.bwbId);
+        }
+        assertEquals(Arrays.asList("BWBR0000000", "BWBR0000001", "BWBR0000002", "BWBR0000003"), bwbIds);
+        store.close();
+    }
+}